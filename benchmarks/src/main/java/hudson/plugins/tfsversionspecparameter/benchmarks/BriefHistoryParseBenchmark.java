@@ -0,0 +1,50 @@
+package hudson.plugins.tfsversionspecparameter.benchmarks;
+
+import hudson.plugins.tfs.model.ChangeSet;
+import hudson.plugins.tfsversionspecparameter.commands.BriefHistoryCommand;
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses tf history -format:brief output into changesets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BriefHistoryParseBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int changesets;
+
+    private String transcript;
+    private BriefHistoryCommand command;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        transcript = Transcripts.history(changesets);
+        command = new BriefHistoryCommand(Transcripts.server(), Transcripts.SCOPE);
+    }
+
+    @Benchmark
+    public List<ChangeSet> parse() throws IOException, ParseException {
+        return command.parse(new StringReader(transcript));
+    }
+}
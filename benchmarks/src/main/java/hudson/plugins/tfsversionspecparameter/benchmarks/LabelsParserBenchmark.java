@@ -0,0 +1,50 @@
+package hudson.plugins.tfsversionspecparameter.benchmarks;
+
+import hudson.plugins.tfsversionspecparameter.util.LabelsParser;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parses tf labels -format:detailed output, keeping the labels of one of two scopes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LabelsParserBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int labels;
+
+    private String transcript;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        transcript = Transcripts.labels(labels);
+    }
+
+    @Benchmark
+    public void nextLabel(Blackhole blackhole) throws IOException {
+        LabelsParser parser = new LabelsParser(new StringReader(transcript), Transcripts.SCOPE);
+        while (parser.nextLabel()) {
+            blackhole.consume(parser.getLabel());
+            blackhole.consume(parser.getDate());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package hudson.plugins.tfsversionspecparameter.benchmarks;
+
+import hudson.plugins.tfs.commands.ServerConfigurationProvider;
+import hudson.plugins.tfs.model.ChangeSet;
+import hudson.plugins.tfsversionspecparameter.model.TFSLabel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic tf output and version lists for the benchmarks.
+ */
+final class Transcripts {
+
+    static final String SCOPE = "$/Product";
+    static final String OTHER_SCOPE = "$/Other";
+
+    private static final String[] MONTHS = {"January", "February", "March", "April", "May", "June",
+        "July", "August", "September", "October", "November", "December"};
+
+    private Transcripts() {
+    }
+
+    /**
+     * Output of tf labels -format:detailed with the given number of labels, every
+     * other one in a scope that is filtered out.
+     */
+    static String labels(int count) {
+        Random random = new Random(count);
+        StringBuilder builder = new StringBuilder(count * 320);
+        for (int i = 0; i < count; i++) {
+            builder.append("\r\n");
+            builder.append("Label  : Release_").append(i).append("\r\n");
+            builder.append("Scope  : ").append(i % 2 == 0 ? SCOPE : OTHER_SCOPE).append("\r\n");
+            builder.append("Owner  : DOMAIN\\builder").append(i % 7).append("\r\n");
+            builder.append("Date   : ").append(1 + random.nextInt(28)).append(' ')
+                    .append(MONTHS[random.nextInt(12)]).append(" 20").append(10 + random.nextInt(10))
+                    .append(" 07:23:55\r\n");
+            builder.append("Comment: Build ").append(i).append(" of the nightly release branch\r\n");
+            builder.append("\r\n");
+            builder.append("Changeset Item\r\n");
+            builder.append("--------- ---------------------------------------------------------------------\r\n");
+            for (int item = 0; item < 3; item++) {
+                builder.append(100000 + i).append("    ").append(SCOPE).append("/Main/src/File").append(item).append(".cs\r\n");
+            }
+            builder.append("\r\n");
+            builder.append("===============================================================================\r\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Output of tf history -format:brief with the given number of changesets.
+     */
+    static String history(int count) {
+        StringBuilder builder = new StringBuilder(count * 80);
+        builder.append("Changeset User              Date       Comment\r\n");
+        builder.append("--------- ----------------- ---------- ----------------------------------------\r\n");
+        for (int i = count; i > 0; i--) {
+            String changeset = Integer.toString(i);
+            builder.append(changeset);
+            pad(builder, 10 - changeset.length());
+            String user = "DOMAIN\\developer" + (i % 13);
+            builder.append(user);
+            pad(builder, 18 - user.length());
+            String date = (1 + i % 12) + "/" + (1 + i % 28) + "/2012";
+            builder.append(date);
+            pad(builder, 11 - date.length());
+            builder.append("Fixed issue ").append(i).append(" in the order service\r\n");
+        }
+        return builder.toString();
+    }
+
+    static List<ChangeSet> changeSets(int count) {
+        List<ChangeSet> list = new ArrayList<ChangeSet>(count);
+        long now = System.currentTimeMillis();
+        for (int i = count; i > 0; i--) {
+            list.add(new ChangeSet(Integer.toString(i), new Date(now - i * 60000L), "DOMAIN\\developer" + (i % 13),
+                    "Fixed issue " + i + " in the order service"));
+        }
+        return list;
+    }
+
+    static List<TFSLabel> tfsLabels(int count) {
+        List<TFSLabel> list = new ArrayList<TFSLabel>(count);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            list.add(new TFSLabel("Release_" + i, SCOPE, new Date(now - i * 60000L), "DOMAIN\\builder" + (i % 7),
+                    "Build " + i + " of the nightly release branch"));
+        }
+        return list;
+    }
+
+    static ServerConfigurationProvider server() {
+        return new ServerConfigurationProvider() {
+            public String getUrl() {
+                return "http://tfs:8080/tfs/DefaultCollection";
+            }
+
+            public String getUserName() {
+                return null;
+            }
+
+            public String getUserPassword() {
+                return null;
+            }
+        };
+    }
+
+    private static void pad(StringBuilder builder, int count) {
+        for (int i = 0; i < count; i++) {
+            builder.append(' ');
+        }
+    }
+}
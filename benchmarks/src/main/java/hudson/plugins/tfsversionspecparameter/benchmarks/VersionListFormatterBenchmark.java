@@ -0,0 +1,71 @@
+package hudson.plugins.tfsversionspecparameter.benchmarks;
+
+import hudson.plugins.tfsversionspecparameter.model.ChangeSetHistory;
+import hudson.plugins.tfsversionspecparameter.model.TFSLabel;
+import hudson.plugins.tfsversionspecparameter.model.VersionListRows;
+import hudson.plugins.tfsversionspecparameter.util.VersionListFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Builds the rows of the parameter select box, as done by
+ * TFSVersionSpecParameterDefinition.generateContents, and formats the first
+ * page of them, as done when the parameters page is rendered.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class VersionListFormatterBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int entries;
+
+    private static final int PAGE_SIZE = 100;
+
+    private ChangeSetHistory history;
+    private List<TFSLabel> labels;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        history = new ChangeSetHistory(Transcripts.changeSets(entries));
+        labels = Transcripts.tfsLabels(entries);
+    }
+
+    @Benchmark
+    public int changeSets() {
+        return formatPage(VersionListFormatter.changeSetRows(history));
+    }
+
+    @Benchmark
+    public int labels() {
+        return formatPage(VersionListFormatter.labelRows(labels));
+    }
+
+    @Benchmark
+    public int labelsAndChangeSets() {
+        return formatPage(VersionListFormatter.labelAndChangeSetRows(labels, history));
+    }
+
+    private static int formatPage(VersionListRows rows) {
+        int length = 0;
+        for (int i = 0; i < Math.min(PAGE_SIZE, rows.size()); i++) {
+            length += rows.getValue(i).length() + rows.getText(i).length();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,202 @@
+package hudson.plugins.tfsversionspecparameter;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.AbstractProject;
+import hudson.model.Hudson;
+import hudson.model.Item;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+import hudson.plugins.tfsversionspecparameter.cache.VersionListPrefetcher;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Index from the uuid of a {@link TFSVersionSpecParameterDefinition} to the job that owns it.
+ * <p>
+ * The index is kept up to date by listening to jobs being loaded, created, copied,
+ * renamed, saved and deleted, including jobs nested in folders. A lookup verifies the
+ * indexed job still holds the very same definition and falls back to scanning all jobs
+ * otherwise. The uuid alone is only trusted when no job holds the definition itself,
+ * since jobs copied on disk share the uuids of the original; jobs copied in Jenkins
+ * get fresh uuids.
+ */
+public final class ParameterOwnerIndex {
+
+    private static final ParameterOwnerIndex INSTANCE = new ParameterOwnerIndex();
+
+    private static final Logger LOGGER = Logger.getLogger(ParameterOwnerIndex.class.getName());
+
+    private final Map<UUID, AbstractProject<?,?>> owners = new ConcurrentHashMap<UUID, AbstractProject<?,?>>();
+
+    public static ParameterOwnerIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the job that owns the definition.
+     * @return the job; null if no job the current user can see owns it.
+     */
+    public AbstractProject<?,?> getOwner(TFSVersionSpecParameterDefinition definition) {
+        UUID uuid = definition.getUuid();
+        if (uuid != null) {
+            AbstractProject<?,?> project = owners.get(uuid);
+            if (project != null && holds(project, definition)) {
+                return project;
+            }
+        }
+        List<AbstractProject> projects = Hudson.getInstance().getAllItems(AbstractProject.class);
+        for (AbstractProject<?,?> project : projects) {
+            if (holds(project, definition)) {
+                index(project);
+                return project;
+            }
+        }
+        if (uuid != null) {
+            // a copy of the definition, e.g. deserialized separately from its job
+            for (AbstractProject<?,?> project : projects) {
+                if (hasUuid(project, uuid)) {
+                    return project;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Indexes the definitions of a job.
+     */
+    public void index(Item item) {
+        if (!(item instanceof AbstractProject)) {
+            return;
+        }
+        AbstractProject<?,?> project = (AbstractProject<?,?>) item;
+        remove(project);
+        for (TFSVersionSpecParameterDefinition definition : getDefinitions(project)) {
+            if (definition.getUuid() != null) {
+                owners.put(definition.getUuid(), project);
+            }
+        }
+    }
+
+    /**
+     * Drops the definitions of a job from the index.
+     */
+    public void remove(Item item) {
+        Iterator<AbstractProject<?,?>> iterator = owners.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == item) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public void rebuild() {
+        owners.clear();
+        List<AbstractProject> projects = Hudson.getInstance().getAllItems(AbstractProject.class);
+        for (AbstractProject<?,?> project : projects) {
+            index(project);
+        }
+    }
+
+    private static boolean holds(AbstractProject<?,?> project, TFSVersionSpecParameterDefinition definition) {
+        for (TFSVersionSpecParameterDefinition candidate : getDefinitions(project)) {
+            if (candidate == definition) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasUuid(AbstractProject<?,?> project, UUID uuid) {
+        for (TFSVersionSpecParameterDefinition candidate : getDefinitions(project)) {
+            if (uuid.equals(candidate.getUuid())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<TFSVersionSpecParameterDefinition> getDefinitions(AbstractProject<?,?> project) {
+        List<TFSVersionSpecParameterDefinition> definitions = new ArrayList<TFSVersionSpecParameterDefinition>();
+        ParametersDefinitionProperty property = (ParametersDefinitionProperty) project.getProperty(ParametersDefinitionProperty.class);
+        if (property != null && property.getParameterDefinitions() != null) {
+            for (ParameterDefinition pd : property.getParameterDefinitions()) {
+                if (pd instanceof TFSVersionSpecParameterDefinition) {
+                    definitions.add((TFSVersionSpecParameterDefinition) pd);
+                }
+            }
+        }
+        return definitions;
+    }
+
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onLoaded() {
+            getInstance().rebuild();
+        }
+
+        @Override
+        public void onCreated(Item item) {
+            getInstance().index(item);
+        }
+
+        @Override
+        public void onCopied(Item src, Item item) {
+            if (item instanceof AbstractProject) {
+                AbstractProject<?,?> project = (AbstractProject<?,?>) item;
+                List<TFSVersionSpecParameterDefinition> definitions = getDefinitions(project);
+                for (TFSVersionSpecParameterDefinition definition : definitions) {
+                    definition.renewUuid();
+                }
+                if (!definitions.isEmpty()) {
+                    try {
+                        project.save();
+                    } catch (IOException ex) {
+                        LOGGER.log(Level.WARNING, "Failed to save " + project.getFullName() + " with new parameter uuids", ex);
+                    }
+                }
+            }
+            getInstance().index(item);
+        }
+
+        @Override
+        public void onRenamed(Item item, String oldName, String newName) {
+            getInstance().index(item);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            List<TFSVersionSpecParameterDefinition> definitions = item instanceof AbstractProject
+                    ? getDefinitions((AbstractProject<?,?>) item) : Collections.<TFSVersionSpecParameterDefinition>emptyList();
+            // the keys of the lists are looked up through the index, so they are deleted first
+            VersionListPrefetcher.deleteSnapshots(definitions);
+            getInstance().remove(item);
+        }
+    }
+
+    /**
+     * Reindexes a job whenever its configuration is saved.
+     */
+    @Extension
+    public static class SaveableListenerImpl extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof AbstractProject) {
+                getInstance().index((AbstractProject<?,?>) o);
+            }
+        }
+    }
+}
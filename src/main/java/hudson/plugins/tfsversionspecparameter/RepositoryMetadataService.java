@@ -0,0 +1,221 @@
+package hudson.plugins.tfsversionspecparameter;
+
+import hudson.plugins.tfs.model.Server;
+import hudson.plugins.tfsversionspecparameter.backend.CircuitBreaker;
+import hudson.plugins.tfsversionspecparameter.backend.CircuitBreakerBackend;
+import hudson.plugins.tfsversionspecparameter.backend.CommandLineBackend;
+import hudson.plugins.tfsversionspecparameter.backend.FallbackBackend;
+import hudson.plugins.tfsversionspecparameter.backend.RestBackend;
+import hudson.plugins.tfsversionspecparameter.backend.TimeLimitedBackend;
+import hudson.plugins.tfsversionspecparameter.backend.VersionListBackend;
+import hudson.plugins.tfsversionspecparameter.cache.VersionListCache;
+import hudson.plugins.tfsversionspecparameter.cache.VersionListKey;
+import hudson.plugins.tfsversionspecparameter.cache.VersionListStore;
+import hudson.plugins.tfsversionspecparameter.model.ChangeSetHistory;
+import hudson.plugins.tfsversionspecparameter.model.TFSLabel;
+import hudson.plugins.tfsversionspecparameter.model.VersionListFilter;
+import hudson.util.DaemonThreadFactory;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides the changesets and labels of a TFS project path to every parameter
+ * definition that uses it.
+ * <p>
+ * Lists are shared by server url, project path and the user the server is
+ * accessed with, so any number of jobs building the same path cost a single
+ * tf invocation per refresh.
+ */
+public final class RepositoryMetadataService {
+
+    private static final RepositoryMetadataService INSTANCE = new RepositoryMetadataService();
+
+    public static final String BACKEND_CLI = "CLI";
+    public static final String BACKEND_REST = "REST";
+
+    /** Threads retrieving labels while the calling thread retrieves the history. */
+    private static final int PARALLEL_THREADS = 4;
+    private static final int PARALLEL_QUEUE = 100;
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(PARALLEL_THREADS, PARALLEL_THREADS, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(PARALLEL_QUEUE), new DaemonThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private volatile int maxItems = TFSVersionSpecParameterDefinition.DEFAULT_MAX_ITEMS;
+    private volatile VersionListBackend backend = new CircuitBreakerBackend(new CommandLineBackend(), CircuitBreaker.getInstance());
+
+    private RepositoryMetadataService() {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static RepositoryMetadataService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param maxItems the maximum number of changesets or labels retrieved for one list; 0 for no limit.
+     * @param backendName {@link #BACKEND_REST} to use the REST API with the tf command line client
+     *        as fallback; {@link #BACKEND_CLI} to only use the command line client.
+     * @param timeout the time in milliseconds a single retrieval may take; 0 for no limit.
+     */
+    public void configure(int maxItems, String backendName, long timeout) {
+        this.maxItems = Math.max(0, maxItems);
+        VersionListBackend base;
+        if (BACKEND_REST.equals(backendName)) {
+            base = new FallbackBackend(new RestBackend(), new CommandLineBackend());
+        } else {
+            base = new CommandLineBackend();
+        }
+        this.backend = new CircuitBreakerBackend(new TimeLimitedBackend(base, timeout), CircuitBreaker.getInstance());
+    }
+
+    public static VersionListKey getKey(Server server, String projectPath, String type, VersionListFilter filter) {
+        return new VersionListKey(server.getUrl(), projectPath, server.getUserName(), type, filter.toString());
+    }
+
+    /**
+     * Returns the cached history of the project path, only retrieving the changesets
+     * checked in since the previous load when the cached history has expired.
+     * @param filter restricts the changesets that are retrieved
+     * @param refresh true to refresh the history even if it has not expired.
+     */
+    public ChangeSetHistory getChangeSetHistory(final Server server, final String projectPath, final VersionListFilter filter, boolean refresh) throws IOException, InterruptedException, ParseException {
+        final int limit = maxItems;
+        final VersionListBackend backend = this.backend;
+        final VersionListKey key = getKey(server, projectPath, TFSVersionSpecParameterDefinition.PARAMETER_TYPE_CHANGESET, filter);
+        VersionListCache.Loader<ChangeSetHistory> loader = new VersionListCache.Loader<ChangeSetHistory>() {
+            public ChangeSetHistory load(ChangeSetHistory previous) throws IOException, InterruptedException, ParseException {
+                VersionListStore store = VersionListStore.getInstance();
+                if (previous == null) {
+                    previous = store.readChangeSetHistory(key, limit);
+                }
+                ChangeSetHistory history;
+                if (previous == null) {
+                    history = new ChangeSetHistory(backend.getChangeSets(server, projectPath, 0, limit, filter));
+                } else {
+                    history = previous.merge(backend.getChangeSets(server, projectPath, previous.getHighestChangeset() + 1, limit, filter), limit);
+                    // changesets that were recent enough when the history was loaded may have aged out since
+                    history = history.since(filter.getCutoff(System.currentTimeMillis()));
+                }
+                if (history != previous) {
+                    store.write(key, history, limit);
+                }
+                return history;
+            }
+        };
+        VersionListCache cache = VersionListCache.getInstance();
+        return refresh ? cache.refresh(key, loader) : cache.get(key, loader);
+    }
+
+    /**
+     * Returns the cached labels of the project path.
+     * @param filter restricts the labels that are retrieved
+     * @param refresh true to retrieve the labels even if the cached ones have not expired.
+     */
+    public List<TFSLabel> getLabels(final Server server, final String projectPath, final VersionListFilter filter, boolean refresh) throws IOException, InterruptedException, ParseException {
+        final int limit = maxItems;
+        final VersionListBackend backend = this.backend;
+        final VersionListKey key = getKey(server, projectPath, TFSVersionSpecParameterDefinition.PARAMETER_TYPE_LABEL, filter);
+        VersionListCache.Loader<List<TFSLabel>> loader = new VersionListCache.Loader<List<TFSLabel>>() {
+            public List<TFSLabel> load(List<TFSLabel> previous) throws IOException, InterruptedException, ParseException {
+                VersionListStore store = VersionListStore.getInstance();
+                if (previous == null) {
+                    List<TFSLabel> stored = store.readLabels(key, limit);
+                    if (stored != null) {
+                        return stored;
+                    }
+                }
+                List<TFSLabel> labels = Collections.unmodifiableList(backend.getLabels(server, projectPath, limit, filter));
+                store.write(key, labels, limit);
+                return labels;
+            }
+        };
+        VersionListCache cache = VersionListCache.getInstance();
+        return refresh ? cache.refresh(key, loader) : cache.get(key, loader);
+    }
+
+    /**
+     * Starts retrieving the labels of the project path on a background thread, so the
+     * caller can retrieve the history at the same time. When all threads are busy the
+     * labels are retrieved by the calling thread before this method returns.
+     * @see #await(Future)
+     */
+    public Future<List<TFSLabel>> getLabelsAsync(final Server server, final String projectPath, final VersionListFilter filter, final boolean refresh) {
+        return executor.submit(new Callable<List<TFSLabel>>() {
+            public List<TFSLabel> call() throws Exception {
+                return getLabels(server, projectPath, filter, refresh);
+            }
+        });
+    }
+
+    /**
+     * Starts retrieving the history of the project path on a background thread, like
+     * {@link #getLabelsAsync(Server, String, VersionListFilter, boolean)}.
+     */
+    public Future<ChangeSetHistory> getChangeSetHistoryAsync(final Server server, final String projectPath, final VersionListFilter filter, final boolean refresh) {
+        return executor.submit(new Callable<ChangeSetHistory>() {
+            public ChangeSetHistory call() throws Exception {
+                return getChangeSetHistory(server, projectPath, filter, refresh);
+            }
+        });
+    }
+
+    /**
+     * Waits for a list started by one of the asynchronous methods and rethrows the
+     * exception it failed with.
+     */
+    public static <T> T await(Future<T> future) throws IOException, InterruptedException, ParseException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            throw ex;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof ParseException) {
+                throw (ParseException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(String.valueOf(cause));
+        }
+    }
+
+    /**
+     * Returns true if the cached list could not be refreshed the last time it was
+     * requested, and an older list is served instead.
+     */
+    public boolean isStale(Server server, String projectPath, String type, VersionListFilter filter) {
+        return VersionListCache.getInstance().isStale(getKey(server, projectPath, type, filter));
+    }
+
+    /**
+     * Drops the cached and stored lists of the project path, so they are retrieved
+     * from scratch on the next request.
+     */
+    public void invalidate(Server server, String projectPath, VersionListFilter filter) {
+        for (String type : new String[] { TFSVersionSpecParameterDefinition.PARAMETER_TYPE_CHANGESET,
+                TFSVersionSpecParameterDefinition.PARAMETER_TYPE_LABEL }) {
+            VersionListKey key = getKey(server, projectPath, type, filter);
+            VersionListCache.getInstance().invalidate(key);
+            VersionListStore.getInstance().delete(key);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package hudson.plugins.tfsversionspecparameter;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Hudson;
+import hudson.model.StreamBuildListener;
+import hudson.model.TaskListener;
+import hudson.plugins.tfs.TeamFoundationServerScm;
+import hudson.plugins.tfs.model.Server;
+import hudson.plugins.tfsversionspecparameter.backend.StreamingServer;
+import hudson.plugins.tfsversionspecparameter.util.OutputTail;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shares one {@link Server} per tf executable, server url and user between all
+ * parameters, instead of creating a launcher, tf tool and server per request.
+ * <p>
+ * The servers run tf on the controller in the Jenkins home directory, so they
+ * work regardless of the workspace or the build history of the job. The url is
+ * the one configured in the job, without build parameters substituted.
+ */
+public final class ServerPool {
+
+    private static final ServerPool INSTANCE = new ServerPool();
+
+    /** Bytes of tf output kept per server to explain failures. */
+    private static final int OUTPUT_TAIL = 8 * 1024;
+
+    private final ConcurrentMap<String, PooledServer> servers = new ConcurrentHashMap<String, PooledServer>();
+
+    public static ServerPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the pooled server for the TFS configuration of a job, creating it on first use
+     * or when the password changed.
+     */
+    public PooledServer get(TeamFoundationServerScm tfs) {
+        return get(tfs, null);
+    }
+
+    /**
+     * Returns the pooled server for another collection, accessed with the credentials
+     * configured in the job.
+     * @param serverUrl the url of the collection; null for the one configured in the job
+     */
+    public PooledServer get(TeamFoundationServerScm tfs, String serverUrl) {
+        String url = serverUrl != null ? serverUrl : tfs.getServerUrl();
+        String executable = tfs.getDescriptor().getTfExecutable();
+        String key = Util.fixNull(executable) + "|" + Util.fixNull(url) + "|" + Util.fixNull(tfs.getUserName());
+        PooledServer pooled = servers.get(key);
+        if (pooled == null || !Util.fixNull(pooled.password).equals(Util.fixNull(tfs.getUserPassword()))) {
+            pooled = new PooledServer(executable, url, tfs.getUserName(), tfs.getUserPassword());
+            servers.put(key, pooled);
+        }
+        return pooled;
+    }
+
+    public void clear() {
+        servers.clear();
+    }
+
+    /**
+     * A server together with the tail of what its tf processes wrote to standard error.
+     */
+    public static final class PooledServer {
+        private final Server server;
+        private final String password;
+        private final OutputTail output = new OutputTail(OUTPUT_TAIL);
+
+        PooledServer(String executable, String url, String userName, String password) {
+            TaskListener listener = new StreamBuildListener(output);
+            this.server = new StreamingServer(executable, Hudson.getInstance().createLauncher(listener), listener,
+                    new FilePath(Hudson.getInstance().getRootDir()), output, url, userName, password);
+            this.password = password;
+        }
+
+        public Server getServer() {
+            return server;
+        }
+
+        /**
+         * @return the position in the output to pass to {@link #getOutputSince(long)}.
+         */
+        public long mark() {
+            return output.mark();
+        }
+
+        /**
+         * Returns the output written since the mark. Calls for other project paths running
+         * at the same time on this server may have written to it as well.
+         */
+        public String getOutputSince(long mark) {
+            return output.since(mark);
+        }
+    }
+}
@@ -1,61 +1,438 @@
 package hudson.plugins.tfsversionspecparameter;
 
-import hudson.AbortException;
 import hudson.Extension;
-import hudson.console.ConsoleNote;
+import hudson.Util;
 import hudson.model.*;
 import hudson.plugins.tfs.TeamFoundationServerScm;
-import hudson.plugins.tfs.TfTool;
-import hudson.plugins.tfs.model.ChangeSet;
 import hudson.plugins.tfs.model.Server;
-import hudson.plugins.tfsversionspecparameter.commands.BriefHistoryCommand;
-import hudson.plugins.tfsversionspecparameter.commands.LabelsForProjectCommand;
+import hudson.plugins.tfsversionspecparameter.cache.VersionListCache;
+import hudson.plugins.tfsversionspecparameter.cache.VersionListKey;
+import hudson.plugins.tfsversionspecparameter.model.ChangeSetHistory;
 import hudson.plugins.tfsversionspecparameter.model.TFSLabel;
+import hudson.plugins.tfsversionspecparameter.model.VersionListFilter;
+import hudson.plugins.tfsversionspecparameter.model.VersionListMerger;
+import hudson.plugins.tfsversionspecparameter.model.VersionListSource;
+import hudson.plugins.tfsversionspecparameter.model.VersionListSnapshot;
+import hudson.plugins.tfsversionspecparameter.stats.VersionListStatistics;
+import hudson.plugins.tfsversionspecparameter.stats.VersionListStats;
+import hudson.plugins.tfsversionspecparameter.util.DateCodec;
+import hudson.plugins.tfsversionspecparameter.util.VersionListFormatter;
 import hudson.scm.SCM;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import hudson.util.Secret;
 import java.io.*;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
-import sun.misc.Launcher;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
 
 
 public class TFSVersionSpecParameterDefinition extends ParameterDefinition  implements Comparable<TFSVersionSpecParameterDefinition> {
     	private static final long serialVersionUID = 9157832967140868122L;
+        private static final Logger LOGGER = Logger.getLogger(TFSVersionSpecParameterDefinition.class.getName());
 
 	public static final String PARAMETER_TYPE_LABEL = "PT_LABEL";
 	public static final String PARAMETER_TYPE_CHANGESET = "PT_CHANGESET";
+	public static final String PARAMETER_TYPE_LABEL_OR_CHANGESET = "PT_LABEL_OR_CHANGESET";
 
-        private final UUID uuid;
+        public static final int DEFAULT_MAX_ITEMS = 1000;
+        public static final int DEFAULT_PAGE_SIZE = 100;
+        public static final int DEFAULT_PREFETCH_INTERVAL = 5;
+        public static final int DEFAULT_PREFETCH_THREADS = 2;
+        public static final int DEFAULT_FETCH_TIMEOUT = 120;
+        public static final int SEARCH_RESULTS = 50;
+        /** Minimum time in milliseconds between two refreshes caused by an unknown submitted value. */
+        public static final long LOOKUP_INTERVAL = 10 * 1000L;
+
+        private UUID uuid;
         
 	@Extension
 	public static class DescriptorImpl extends ParameterDescriptor {
+                private int cacheTimeToLive = (int) (VersionListCache.DEFAULT_TIME_TO_LIVE / 60000L);
+                private int cacheSize = VersionListCache.DEFAULT_MAX_ENTRIES;
+                private int maxItems = DEFAULT_MAX_ITEMS;
+                private int pageSize = DEFAULT_PAGE_SIZE;
+                private int prefetchInterval = DEFAULT_PREFETCH_INTERVAL;
+                private int prefetchThreads = DEFAULT_PREFETCH_THREADS;
+                private String backend = RepositoryMetadataService.BACKEND_CLI;
+                private int fetchTimeout = DEFAULT_FETCH_TIMEOUT;
+                private boolean webhookEnabled;
+                private Secret webhookToken;
+                private String outputLocale;
+
+                public DescriptorImpl() {
+                    load();
+                    applyCacheSettings();
+                }
+
 		@Override
 		public String getDisplayName() {
 			return "TFS VersionSpec Parameter";
 		}
+
+                @Override
+                public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+                    int previousMaxItems = maxItems;
+                    req.bindJSON(this, json);
+                    save();
+                    applyCacheSettings();
+                    if (maxItems != previousMaxItems) {
+                        VersionListCache.getInstance().clear();
+                    }
+                    return true;
+                }
+
+                /**
+                 * Minutes a retrieved changeset or label list is served from the cache.
+                 */
+                public int getCacheTimeToLive() {
+                    return cacheTimeToLive;
+                }
+
+                public void setCacheTimeToLive(int cacheTimeToLive) {
+                    this.cacheTimeToLive = Math.max(0, cacheTimeToLive);
+                }
+
+                /**
+                 * Maximum number of changeset and label lists kept in the cache.
+                 */
+                public int getCacheSize() {
+                    return cacheSize;
+                }
+
+                public void setCacheSize(int cacheSize) {
+                    this.cacheSize = Math.max(1, cacheSize);
+                }
+
+                /**
+                 * Maximum number of changesets or labels retrieved from TFS for one list.
+                 */
+                public int getMaxItems() {
+                    return maxItems;
+                }
+
+                public void setMaxItems(int maxItems) {
+                    this.maxItems = Math.max(0, maxItems);
+                }
+
+                /**
+                 * Number of entries rendered with the page and fetched each time the list is scrolled.
+                 */
+                public int getPageSize() {
+                    return pageSize;
+                }
+
+                public void setPageSize(int pageSize) {
+                    this.pageSize = Math.max(1, pageSize);
+                }
+
+                /**
+                 * Minutes between background refreshes of the cached lists; 0 disables prefetching.
+                 */
+                public int getPrefetchInterval() {
+                    return prefetchInterval;
+                }
+
+                public void setPrefetchInterval(int prefetchInterval) {
+                    this.prefetchInterval = Math.max(0, prefetchInterval);
+                }
+
+                /**
+                 * Number of lists refreshed at the same time by the background prefetch.
+                 */
+                public int getPrefetchThreads() {
+                    return prefetchThreads;
+                }
+
+                public void setPrefetchThreads(int prefetchThreads) {
+                    this.prefetchThreads = Math.max(1, prefetchThreads);
+                }
+
+                /**
+                 * How changesets and labels are retrieved from TFS.
+                 */
+                public String getBackend() {
+                    return backend;
+                }
+
+                public void setBackend(String backend) {
+                    this.backend = backend;
+                }
+
+                /**
+                 * Seconds a single retrieval of changesets or labels may take before the tf process is killed.
+                 */
+                public int getFetchTimeout() {
+                    return fetchTimeout;
+                }
+
+                public void setFetchTimeout(int fetchTimeout) {
+                    this.fetchTimeout = Math.max(0, fetchTimeout);
+                }
+
+                /**
+                 * Whether TFS may notify the plugin of check-ins and labels, see {@link TFSVersionSpecWebhook}.
+                 */
+                public boolean isWebhookEnabled() {
+                    return webhookEnabled;
+                }
+
+                public void setWebhookEnabled(boolean webhookEnabled) {
+                    this.webhookEnabled = webhookEnabled;
+                }
+
+                /**
+                 * Token TFS must send with its notifications; notifications are rejected while it is empty.
+                 */
+                public Secret getWebhookToken() {
+                    return webhookToken;
+                }
+
+                public void setWebhookToken(String webhookToken) {
+                    this.webhookToken = Secret.fromString(Util.fixEmptyAndTrim(webhookToken));
+                }
+
+                /**
+                 * Locale tf runs with, e.g. <tt>de_DE</tt>, which decides how it prints dates; empty for the locale of Jenkins.
+                 */
+                public String getOutputLocale() {
+                    return outputLocale;
+                }
+
+                public void setOutputLocale(String outputLocale) {
+                    this.outputLocale = Util.fixEmptyAndTrim(outputLocale);
+                }
+
+                public FormValidation doCheckOutputLocale(@QueryParameter String value) {
+                    Locale locale = DateCodec.toLocale(value);
+                    if (locale == null || Arrays.asList(DateFormat.getAvailableLocales()).contains(locale)) {
+                        return FormValidation.ok();
+                    }
+                    return FormValidation.warning("Dates are not known in the layout of " + value + ", only a few common layouts are recognized");
+                }
+
+                public FormValidation doCheckFetchTimeout(@QueryParameter String value) {
+                    return FormValidation.validateNonNegativeInteger(value);
+                }
+
+                public ListBoxModel doFillBackendItems() {
+                    ListBoxModel items = new ListBoxModel();
+                    items.add("tf command line client", RepositoryMetadataService.BACKEND_CLI);
+                    items.add("TFS REST API, falling back to the command line client", RepositoryMetadataService.BACKEND_REST);
+                    return items;
+                }
+
+                public FormValidation doCheckPrefetchInterval(@QueryParameter String value) {
+                    return FormValidation.validateNonNegativeInteger(value);
+                }
+
+                public FormValidation doCheckPrefetchThreads(@QueryParameter String value) {
+                    return FormValidation.validatePositiveInteger(value);
+                }
+
+                public FormValidation doCheckMaxItems(@QueryParameter String value) {
+                    return FormValidation.validateNonNegativeInteger(value);
+                }
+
+                public FormValidation doCheckPageSize(@QueryParameter String value) {
+                    return FormValidation.validatePositiveInteger(value);
+                }
+
+                public FormValidation doCheckCacheTimeToLive(@QueryParameter String value) {
+                    return FormValidation.validateNonNegativeInteger(value);
+                }
+
+                public FormValidation doCheckCacheSize(@QueryParameter String value) {
+                    return FormValidation.validatePositiveInteger(value);
+                }
+
+                public FormValidation doCheckNameFilter(@QueryParameter String value, @QueryParameter boolean nameFilterRegex) {
+                    if (!nameFilterRegex || StringUtils.isBlank(value)) {
+                        return FormValidation.ok();
+                    }
+                    try {
+                        Pattern.compile(value.trim());
+                        return FormValidation.ok();
+                    } catch (PatternSyntaxException ex) {
+                        return FormValidation.error("Invalid regular expression: " + ex.getDescription());
+                    }
+                }
+
+                /**
+                 * Changesets and labels only identify a version within a collection, and the job checks
+                 * out from its own collection, so versions of other collections cannot be offered.
+                 */
+                public FormValidation doCheckAdditionalPaths(@AncestorInPath AbstractProject<?,?> project,
+                        @QueryParameter String value) {
+                    String collectionUrl = null;
+                    if (project != null && project.getScm() instanceof TeamFoundationServerScm) {
+                        collectionUrl = ((TeamFoundationServerScm) project.getScm()).getServerUrl();
+                    }
+                    for (VersionListSource source : VersionListSource.parse(value)) {
+                        if (!source.isOnCollection(collectionUrl)) {
+                            return FormValidation.error("Versions of " + source.getServerUrl()
+                                    + " cannot be built by this job, list only paths of the collection of the job");
+                        }
+                    }
+                    return FormValidation.ok();
+                }
+
+                public FormValidation doCheckMaxAge(@QueryParameter String value) {
+                    return FormValidation.validateNonNegativeInteger(value);
+                }
+
+                /**
+                 * Drops the cached lists of the given parameter, so the next page load retrieves them in full.
+                 * Requires the permission to build the job, because it makes TFS list the full history again.
+                 */
+                @RequirePOST
+                public void doRefresh(StaplerRequest req, StaplerResponse rsp, @QueryParameter String job, @QueryParameter String param) throws IOException {
+                    AbstractProject<?,?> project = findProject(job);
+                    TFSVersionSpecParameterDefinition definition = findDefinition(project, param);
+                    if (definition == null) {
+                        rsp.sendError(StaplerResponse.SC_NOT_FOUND);
+                        return;
+                    }
+                    project.checkPermission(Item.BUILD);
+                    definition.refresh();
+                    rsp.setStatus(StaplerResponse.SC_OK);
+                }
+
+                /**
+                 * Returns a page of the list of the given parameter as JSON, used to load more
+                 * entries into the select box as the user scrolls.
+                 */
+                public void doPage(StaplerRequest req, StaplerResponse rsp, @QueryParameter String job, @QueryParameter String param,
+                        @QueryParameter int offset) throws IOException {
+                    AbstractProject<?,?> project = findProject(job);
+                    TFSVersionSpecParameterDefinition definition = findDefinition(project, param);
+                    if (definition == null) {
+                        rsp.sendError(StaplerResponse.SC_NOT_FOUND);
+                        return;
+                    }
+                    project.checkPermission(Item.READ);
+                    VersionListSnapshot snapshot = definition.loadSnapshot();
+                    JSONArray items = new JSONArray();
+                    for (Map.Entry<String, String> entry : snapshot.getPage(offset, pageSize)) {
+                        JSONObject item = new JSONObject();
+                        item.element("value", entry.getKey());
+                        item.element("text", entry.getValue());
+                        items.element(item);
+                    }
+                    JSONObject page = new JSONObject();
+                    page.element("items", items);
+                    page.element("more", offset + items.size() < snapshot.size());
+                    rsp.setContentType("application/json;charset=UTF-8");
+                    rsp.getWriter().print(page.toString());
+                }
+
+                /**
+                 * Returns the entries of the list of the given parameter matching the query as JSON,
+                 * used to suggest values while the user types.
+                 */
+                public void doSearch(StaplerRequest req, StaplerResponse rsp, @QueryParameter String job, @QueryParameter String param,
+                        @QueryParameter String q) throws IOException {
+                    AbstractProject<?,?> project = findProject(job);
+                    TFSVersionSpecParameterDefinition definition = findDefinition(project, param);
+                    if (definition == null) {
+                        rsp.sendError(StaplerResponse.SC_NOT_FOUND);
+                        return;
+                    }
+                    project.checkPermission(Item.READ);
+                    JSONArray items = new JSONArray();
+                    for (Map.Entry<String, String> entry : definition.search(q, SEARCH_RESULTS).entrySet()) {
+                        JSONObject item = new JSONObject();
+                        item.element("value", entry.getKey());
+                        item.element("text", entry.getValue());
+                        items.element(item);
+                    }
+                    JSONObject result = new JSONObject();
+                    result.element("items", items);
+                    rsp.setContentType("application/json;charset=UTF-8");
+                    rsp.getWriter().print(result.toString());
+                }
+
+                /**
+                 * Looks up a job by its full name.
+                 * @return the job; null if it does not exist or the user cannot see it.
+                 */
+                static AbstractProject<?,?> findProject(String job) {
+                    return job == null ? null : Hudson.getInstance().getItemByFullName(job, AbstractProject.class);
+                }
+
+                /**
+                 * Looks up a parameter definition of a job by its parameter name.
+                 * @return the definition; null if the job is null or has no such parameter.
+                 */
+                static TFSVersionSpecParameterDefinition findDefinition(AbstractProject<?,?> project, String param) {
+                    if (project == null || param == null) {
+                        return null;
+                    }
+                    ParametersDefinitionProperty property = (ParametersDefinitionProperty) project.getProperty(ParametersDefinitionProperty.class);
+                    if (property == null) {
+                        return null;
+                    }
+                    ParameterDefinition definition = property.getParameterDefinition(param);
+                    if (definition instanceof TFSVersionSpecParameterDefinition) {
+                        return (TFSVersionSpecParameterDefinition) definition;
+                    }
+                    return null;
+                }
+
+                private void applyCacheSettings() {
+                    VersionListCache.getInstance().configure(cacheTimeToLive * 60000L, cacheSize);
+                    RepositoryMetadataService.getInstance().configure(maxItems, backend, fetchTimeout * 1000L);
+                    DateCodec.setOutputLocale(DateCodec.toLocale(outputLocale));
+                }
 	}
 
         private String type;
         
-        private String errorMessage;        
 	private String defaultValue;        
         
-        private Map<String, String> changesetMap;
-        private Map<String, String> labelMap;
+        private String nameFilter;
+        private boolean nameFilterRegex;
+        private String owner;
+        private int maxAge;
+        private String additionalPaths;
+        
+        private transient volatile VersionListSnapshot snapshot;
+        private transient volatile long lastLookup;
+
+        /** Claims a lookup so concurrent checks of unknown values cause only one refresh. */
+        private static final AtomicLongFieldUpdater<TFSVersionSpecParameterDefinition> LAST_LOOKUP =
+                AtomicLongFieldUpdater.newUpdater(TFSVersionSpecParameterDefinition.class, "lastLookup");
 
-        @DataBoundConstructor
 	public TFSVersionSpecParameterDefinition(String name, String type, String defaultValue, String description) {
+		this(name, type, defaultValue, description, null, false, null, 0, null);
+      	}
+
+        @DataBoundConstructor
+	public TFSVersionSpecParameterDefinition(String name, String type, String defaultValue, String description,
+                String nameFilter, boolean nameFilterRegex, String owner, int maxAge, String additionalPaths) {
 		super(name, description);
 		this.type = type;
 		this.defaultValue = defaultValue;
+                this.nameFilter = Util.fixEmptyAndTrim(nameFilter);
+                this.nameFilterRegex = nameFilterRegex;
+                this.owner = Util.fixEmptyAndTrim(owner);
+                this.maxAge = Math.max(0, maxAge);
+                this.additionalPaths = Util.fixEmptyAndTrim(additionalPaths);
                 
                 this.uuid = UUID.randomUUID();     
       	}
@@ -67,10 +444,12 @@ public class TFSVersionSpecParameterDefinition extends ParameterDefinition  impl
 		String strValue = "";
 		if (value instanceof String) {
 			strValue = (String)value;
+			checkValue(strValue);
 		}
 		else if (value instanceof JSONArray) {
 			JSONArray jsonValues = (JSONArray)value;
 			for(int i = 0; i < jsonValues.size(); i++) {
+				checkValue(jsonValues.getString(i));
 				strValue += jsonValues.getString(i);
 				if (i < jsonValues.size() - 1) {
 					strValue += ",";
@@ -82,7 +461,7 @@ public class TFSVersionSpecParameterDefinition extends ParameterDefinition  impl
                     strValue = defaultValue;
                 }
 
-		TFSVersionSpecParameterValue parameterValue = new TFSVersionSpecParameterValue(jO.getString("name"), strValue);
+		TFSVersionSpecParameterValue parameterValue = createValue(jO.getString("name"), strValue);
 		return parameterValue;
         }
 
@@ -92,14 +471,127 @@ public class TFSVersionSpecParameterDefinition extends ParameterDefinition  impl
 		if (value == null) {
 			return getDefaultParameterValue();
 		}
-		return null;
+		StringBuilder strValue = new StringBuilder();
+		for (int i = 0; i < value.length; i++) {
+			checkValue(value[i]);
+			if (i > 0) {
+				strValue.append(',');
+			}
+			strValue.append(value[i]);
+		}
+		if (strValue.length() == 0) {
+			return getDefaultParameterValue();
+		}
+		return createValue(getName(), strValue.toString());
+        }
+        
+        /**
+         * Creates a value that records the changeset a single selected value resolves to and
+         * its date, as found in the current list. Nothing is retrieved from TFS.
+         */
+        private TFSVersionSpecParameterValue createValue(String name, String value) {
+            if (StringUtils.isBlank(value) || value.indexOf(',') >= 0) {
+                return new TFSVersionSpecParameterValue(name, value);
+            }
+            VersionListSnapshot current = getSnapshot();
+            int row = current.indexOf(value);
+            if (row >= 0) {
+                return new TFSVersionSpecParameterValue(name, value, current.getChangeset(row), current.getTime(row));
+            }
+            if (isChangesetNumber(value)) {
+                String number = value.startsWith("C") ? value.substring(1) : value;
+                try {
+                    return new TFSVersionSpecParameterValue(name, value, Integer.parseInt(number), Long.MIN_VALUE);
+                } catch (NumberFormatException ex) {
+                    // too large to be a changeset
+                }
+            }
+            return new TFSVersionSpecParameterValue(name, value);
+        }
+        
+        /**
+         * Checks that a submitted value is a changeset or label in the list of this parameter,
+         * so that a build with a mistyped or deleted version fails before it is scheduled.
+         * A value missing from the list causes one refresh from TFS, at most once every
+         * {@link #LOOKUP_INTERVAL} milliseconds. A value is only rejected when the list is known
+         * to hold every changeset or label of the paths; it is accepted when TFS cannot be reached,
+         * the list is cut off at the maximum number of entries or narrowed by a filter, since the
+         * value may then be a real version that is not listed.
+         * @throws Failure if the value is not in the list
+         */
+        void checkValue(String value) {
+            if (StringUtils.isBlank(value)) {
+                return;
+            }
+            VersionListSnapshot current = getSnapshot();
+            if (current.contains(value)) {
+                return;
+            }
+            if (current.size() == 0) {
+                current = loadSnapshot();
+                if (current.contains(value)) {
+                    return;
+                }
+            }
+            long now = System.currentTimeMillis();
+            long previous = lastLookup;
+            if (current.getErrorMessage().length() == 0 && now - previous >= LOOKUP_INTERVAL
+                    && LAST_LOOKUP.compareAndSet(this, previous, now)) {
+                current = generateContents(getType(), true);
+                snapshot = current;
+            }
+            if (current.contains(value)) {
+                return;
+            }
+            if (current.getErrorMessage().length() > 0) {
+                LOGGER.log(Level.FINE, "Unable to validate {0}={1}: {2}", new Object[] { getName(), value, current.getErrorMessage() });
+                return;
+            }
+            if (!isComplete(current)) {
+                LOGGER.log(Level.FINE, "Accepting {0}={1}, the list of the parameter is incomplete", new Object[] { getName(), value });
+                return;
+            }
+            throw new Failure("'" + value + "' is not a valid value of the parameter " + getName());
+        }
+        
+        /**
+         * Returns true if the list holds every changeset or label of the paths: it is up to date,
+         * not filtered and not cut off at the maximum number of entries. A merged list is cut off
+         * if any of the lists it is made of is, and then it has at least the maximum number of entries.
+         */
+        private boolean isComplete(VersionListSnapshot list) {
+            if (list.isStale()) {
+                return false;
+            }
+            try {
+                if (!getFilter().isEmpty()) {
+                    return false;
+                }
+            } catch (PatternSyntaxException ex) {
+                return false;
+            }
+            int maxItems = getDescriptor().getMaxItems();
+            return maxItems == 0 || list.size() < maxItems;
+        }
+        
+        private boolean isChangesetNumber(String value) {
+            String number = value;
+            if (PARAMETER_TYPE_LABEL_OR_CHANGESET.equalsIgnoreCase(getType())) {
+                if (!value.startsWith("C")) {
+                    return false;
+                }
+                number = value.substring(1);
+            } else if (PARAMETER_TYPE_LABEL.equalsIgnoreCase(getType())) {
+                return false;
+            }
+            return number.length() > 0 && StringUtils.isNumeric(number);
         }
         
 	@Override
 	public ParameterValue getDefaultParameterValue() {
 		String defValue = getDefaultValue();
 		if (!StringUtils.isBlank(defValue)) {                    
-			return new TFSVersionSpecParameterValue(getName(), defValue);
+			return createValue(getName(), defValue);
 		}
 		return super.getDefaultParameterValue();
 	}
@@ -110,11 +602,12 @@ public class TFSVersionSpecParameterDefinition extends ParameterDefinition  impl
             return type;
         }
         
+        /**
+         * Sets the type of the list; an unknown type is ignored and the current one kept.
+         */
 	public void setType(String type) {
-            if(type.equals(PARAMETER_TYPE_LABEL) || type.equals(PARAMETER_TYPE_CHANGESET) ) {
+            if(type.equals(PARAMETER_TYPE_LABEL) || type.equals(PARAMETER_TYPE_CHANGESET) || type.equals(PARAMETER_TYPE_LABEL_OR_CHANGESET) ) {
 		this.type = type;
-            } else {
-                this.errorMessage = "wrongType";
             }
 	}
         
@@ -126,119 +619,365 @@ public class TFSVersionSpecParameterDefinition extends ParameterDefinition  impl
 		this.defaultValue = defaultValue;
 	}
         
+        /**
+         * Glob or regular expression the names of the listed labels must match; null to list all labels.
+         */
+        public String getNameFilter() {
+            return nameFilter;
+        }
+        
+        public boolean isNameFilterRegex() {
+            return nameFilterRegex;
+        }
+        
+        /**
+         * User that must have created the listed changesets and labels; null for any user.
+         */
+        public String getOwner() {
+            return owner;
+        }
+        
+        /**
+         * Maximum age in days of the listed changesets and labels; 0 for any age.
+         */
+        public int getMaxAge() {
+            return maxAge;
+        }
+        
+        /**
+         * Server paths listed besides the one of the job, one per line, each optionally
+         * preceded by the url of its collection; null for none.
+         */
+        public String getAdditionalPaths() {
+            return additionalPaths;
+        }
+        
+        /**
+         * Returns the filter passed to TFS when the list of this parameter is retrieved.
+         * @throws PatternSyntaxException if the name filter is not a valid regular expression
+         */
+        public VersionListFilter getFilter() {
+            return new VersionListFilter(nameFilter, nameFilterRegex, owner, maxAge);
+        }
+        
 	public String getErrorMessage() {
-            return errorMessage;
+            return getSnapshot().getErrorMessage();
         }
-
-        public Map<String, String> getChangeSetMap() throws IOException, InterruptedException {
-            if( changesetMap == null || changesetMap.isEmpty()){
-                changesetMap= new LinkedHashMap<String, String>();
-            }
-            return changesetMap;
+        
+        /**
+         * @return true if the list could not be refreshed from TFS and an older list is shown.
+         */
+        public boolean isStale() {
+            return getSnapshot().isStale();
         }
         
         public String getPopulateCollection()
         {
-                errorMessage = "";
-                generateContents(getType());
-                return getErrorMessage();
+                return loadSnapshot().getErrorMessage();
+        }
+        
+        /**
+         * Returns the most recently published list of this parameter without refreshing it.
+         */
+        public VersionListSnapshot getSnapshot() {
+            VersionListSnapshot current = snapshot;
+            return current == null ? VersionListSnapshot.EMPTY : current;
+        }
+        
+        /**
+         * Refreshes the list of this parameter from the cache and publishes it.
+         */
+        public VersionListSnapshot loadSnapshot() {
+            VersionListSnapshot loaded = generateContents(getType());
+            snapshot = loaded;
+            return loaded;
+        }
+        
+        /**
+         * Returns up to max entries of the most recently published list matching the query,
+         * by prefix of the words of their value, display text and owner. The list is not
+         * refreshed, as the parameters page that sends the query already did.
+         */
+        public Map<String, String> search(String query, int max) {
+            return getSnapshot().search(query, max);
         }
         
         public Map<String, String> getDataMap() {
-            if (getType().equals(PARAMETER_TYPE_LABEL))
-                return labelMap;
-            else
-                return changesetMap;
+            return getSnapshot().getEntries();
         }
         
-        public Map<String, String> getLabelMap() throws IOException, InterruptedException {
-            if( labelMap == null || labelMap.isEmpty()){
-                labelMap= new LinkedHashMap<String, String>();
-            }
-            return labelMap;
+        public int getDataSize() {
+            return getSnapshot().size();
+        }
+        
+        /**
+         * Returns count entries of the list starting at offset.
+         */
+        public List<Map.Entry<String, String>> getPage(int offset, int count) {
+            return getSnapshot().getPage(offset, count);
+        }
+        
+        @Override
+        public DescriptorImpl getDescriptor() {
+            return (DescriptorImpl) super.getDescriptor();
+        }
+        
+        /**
+         * Builds the list of the given type from the cached changesets or labels. The
+         * previous snapshot is reused when the cached list has not changed.
+         */
+        public VersionListSnapshot generateContents(String contenttype) {
+            return generateContents(contenttype, false);
         }
         
-        public void generateContents(String contenttype) {
+        /**
+         * @param refresh true to retrieve what changed from TFS even if the cached lists have not expired
+         */
+        private VersionListSnapshot generateContents(String contenttype, boolean refresh) {
             AbstractProject<?,?> project = getParentProject();
+            if (project == null) {
+                return VersionListSnapshot.error("Unable to find the job of this parameter");
+            }
             
             SCM scm = project.getScm();
             if (!(scm instanceof TeamFoundationServerScm)) {
-                this.errorMessage = "TFS must be used as the SCM repository";
-                return;
+                return VersionListSnapshot.error("TFS must be used as the SCM repository");
             }
             TeamFoundationServerScm tfs = (TeamFoundationServerScm) scm;
-            String tfsExe = tfs.getDescriptor().getTfExecutable();
-            
-            Hudson hudson = Hudson.getInstance();
+            VersionListFilter filter;
+            try {
+                filter = getFilter();
+            } catch (PatternSyntaxException ex) {
+                return VersionListSnapshot.error("Invalid label name filter: " + ex.getDescription());
+            }
             
-            ByteArrayOutputStream consoleStream = new ByteArrayOutputStream();
-            TaskListener listener  = new StreamBuildListener(consoleStream);
-            hudson.Launcher launcher = hudson.createLauncher(listener);
-            TfTool tool = new TfTool(tfsExe, launcher, listener, project.getSomeWorkspace());
-            Server server = new Server(tool, tfs.getServerUrl(project.getLastBuild()), tfs.getUserName(), tfs.getUserPassword());
+            ServerPool.PooledServer pooled = ServerPool.getInstance().get(tfs);
+            Server server = pooled.getServer();
+            long mark = pooled.mark();
+            VersionListSnapshot current = getSnapshot();
             try{
-                if(contenttype.equalsIgnoreCase(PARAMETER_TYPE_CHANGESET)) {
-                    Map<String, String> map = getChangeSetMap();
-                    List<ChangeSet> changesets = getChangeSets(server, tfs.getProjectPath());
-                    Iterator<ChangeSet> iterator = changesets.iterator();
-                    while(iterator.hasNext()) {
-                        ChangeSet cs = iterator.next();
-                        map.put(cs.getVersion(), cs.getVersion() + " - " + DateFormat.getDateInstance(DateFormat.MEDIUM).format(cs.getDate()) + " - " + cs.getMsg());
-                    }
+                RetrievedLists lists = retrieve(tfs, contenttype, filter, refresh);
+                if (current.isBuiltFrom(lists.stale, lists.getSources())) {
+                    return current;
                 }
-                
-                if(contenttype.equalsIgnoreCase(PARAMETER_TYPE_LABEL)) {
-                    Map<String, String> map = getLabelMap();
-                    List<TFSLabel> changesets = getLabels(server, tfs.getProjectPath());
-                    Iterator<TFSLabel> iterator = changesets.iterator();
-                    while(iterator.hasNext()) {
-                        TFSLabel lbl = iterator.next();
-                        map.put(lbl.getLabel(), lbl.getLabel() + " - " + DateFormat.getDateInstance(DateFormat.MEDIUM).format(lbl.getDate()) + " - " + lbl.getComment());
-                    }
+                int maxItems = getDescriptor().getMaxItems();
+                long started = System.nanoTime();
+                VersionListSnapshot loaded;
+                if(contenttype.equalsIgnoreCase(PARAMETER_TYPE_LABEL_OR_CHANGESET)) {
+                    loaded = new VersionListSnapshot(lists.getSources(), VersionListFormatter.labelAndChangeSetRows(
+                            VersionListMerger.mergeLabels(lists.labels, maxItems), VersionListMerger.mergeHistories(lists.histories, maxItems)),
+                            current, lists.stale);
+                } else if(contenttype.equalsIgnoreCase(PARAMETER_TYPE_LABEL)) {
+                    loaded = new VersionListSnapshot(lists.getSources(),
+                            VersionListFormatter.labelRows(VersionListMerger.mergeLabels(lists.labels, maxItems)), current, lists.stale);
+                } else {
+                    loaded = new VersionListSnapshot(lists.getSources(),
+                            VersionListFormatter.changeSetRows(VersionListMerger.mergeHistories(lists.histories, maxItems)), current, lists.stale);
                 }
-                
+                getStats(server, tfs).getFormat().record(System.nanoTime() - started);
+                return loaded;
             } catch (IOException ex) {
-                this.errorMessage = consoleStream.toString();
+                return VersionListSnapshot.error(describe(pooled, mark, ex));
             } catch (InterruptedException ex) {
-                this.errorMessage = consoleStream.toString();
+                return VersionListSnapshot.error(describe(pooled, mark, ex));
             } catch (ParseException ex) {
-                this.errorMessage = consoleStream.toString();
+                return VersionListSnapshot.error(describe(pooled, mark, ex));
             }
-            finally
-            {
-                try {
-                    consoleStream.close();
-                } catch (IOException ex) {
-                    this.errorMessage = ex.getMessage();
+        }
+        
+        /**
+         * Retrieves the cached lists of the given type for every server path of this parameter.
+         * The lists of all paths are retrieved at the same time; the history, or for label lists
+         * the labels, of the path of the job are retrieved by the calling thread while the others
+         * are retrieved in the background.
+         */
+        private RetrievedLists retrieve(TeamFoundationServerScm tfs, String contenttype, VersionListFilter filter, boolean refresh)
+                throws IOException, InterruptedException, ParseException {
+            RepositoryMetadataService service = RepositoryMetadataService.getInstance();
+            boolean labels = !PARAMETER_TYPE_CHANGESET.equalsIgnoreCase(contenttype);
+            boolean changesets = !PARAMETER_TYPE_LABEL.equalsIgnoreCase(contenttype);
+            List<VersionListSource> sources = getSources(tfs);
+            List<Server> servers = new ArrayList<Server>(sources.size());
+            List<Future<List<TFSLabel>>> pendingLabels = new ArrayList<Future<List<TFSLabel>>>();
+            List<Future<ChangeSetHistory>> pendingHistories = new ArrayList<Future<ChangeSetHistory>>();
+            RetrievedLists lists = new RetrievedLists();
+            for (int i = 0; i < sources.size(); i++) {
+                VersionListSource source = sources.get(i);
+                Server server = ServerPool.getInstance().get(tfs, source.getServerUrl()).getServer();
+                servers.add(server);
+                if (labels && (changesets || i > 0)) {
+                    pendingLabels.add(service.getLabelsAsync(server, source.getProjectPath(), filter, refresh));
+                }
+                if (changesets && i > 0) {
+                    pendingHistories.add(service.getChangeSetHistoryAsync(server, source.getProjectPath(), filter, refresh));
+                }
+            }
+            if (changesets) {
+                lists.histories.add(service.getChangeSetHistory(servers.get(0), sources.get(0).getProjectPath(), filter, refresh));
+                for (Future<ChangeSetHistory> history : pendingHistories) {
+                    lists.histories.add(RepositoryMetadataService.await(history));
+                }
+            }
+            if (labels && !changesets) {
+                lists.labels.add(service.getLabels(servers.get(0), sources.get(0).getProjectPath(), filter, refresh));
+            }
+            for (Future<List<TFSLabel>> label : pendingLabels) {
+                lists.labels.add(RepositoryMetadataService.await(label));
+            }
+            for (int i = 0; i < sources.size(); i++) {
+                String path = sources.get(i).getProjectPath();
+                lists.stale |= (labels && service.isStale(servers.get(i), path, PARAMETER_TYPE_LABEL, filter))
+                        || (changesets && service.isStale(servers.get(i), path, PARAMETER_TYPE_CHANGESET, filter));
+            }
+            return lists;
+        }
+        
+        /**
+         * The cached lists of all server paths of a parameter.
+         */
+        private static final class RetrievedLists {
+            final List<List<TFSLabel>> labels = new ArrayList<List<TFSLabel>>();
+            final List<ChangeSetHistory> histories = new ArrayList<ChangeSetHistory>();
+            boolean stale;
+            
+            Object[] getSources() {
+                List<Object> sources = new ArrayList<Object>(labels);
+                sources.addAll(histories);
+                return sources.toArray();
+            }
+        }
+        
+        /**
+         * Returns the server path of the job followed by the additional server paths on the
+         * collection of the job. Changesets and labels only identify a version within their
+         * collection and the job checks out from its own, so paths on other collections are skipped.
+         */
+        private List<VersionListSource> getSources(TeamFoundationServerScm tfs) {
+            List<VersionListSource> sources = new ArrayList<VersionListSource>();
+            sources.add(new VersionListSource(null, tfs.getProjectPath()));
+            for (VersionListSource source : VersionListSource.parse(additionalPaths)) {
+                if (source.isOnCollection(tfs.getServerUrl())) {
+                    sources.add(source);
                 }
             }
+            return sources;
+        }
+        
+        /**
+         * Returns the tf output written since the mark, or the message of the exception if there was none.
+         */
+        private static String describe(ServerPool.PooledServer pooled, long mark, Exception ex) {
+            String output = pooled.getOutputSince(mark);
+            return output.trim().length() > 0 ? output : String.valueOf(ex.getMessage());
+        }
+        
+        /**
+         * Refreshes the cached list of this parameter in the background, so that the
+         * parameters page can be rendered from memory.
+         * @return false if the parameter is not used by a job with a TFS repository.
+         */
+        public boolean prefetch() throws IOException, InterruptedException, ParseException {
+            AbstractProject<?,?> project = getParentProject();
+            if (project == null || !(project.getScm() instanceof TeamFoundationServerScm)) {
+                return false;
+            }
+            retrieve((TeamFoundationServerScm) project.getScm(), getType(), getFilter(), true);
+            return true;
+        }
+        
+        /**
+         * Returns the key of the cached list of this parameter.
+         * @return the key; null if the parameter is not used by a job with a TFS repository
+         *         or its name filter is invalid.
+         */
+        public VersionListKey getVersionListKey() {
+            AbstractProject<?,?> project = getParentProject();
+            if (project == null || !(project.getScm() instanceof TeamFoundationServerScm)) {
+                return null;
+            }
+            TeamFoundationServerScm tfs = (TeamFoundationServerScm) project.getScm();
+            String type = PARAMETER_TYPE_CHANGESET;
+            if (PARAMETER_TYPE_LABEL.equalsIgnoreCase(getType())) {
+                type = PARAMETER_TYPE_LABEL;
+            } else if (PARAMETER_TYPE_LABEL_OR_CHANGESET.equalsIgnoreCase(getType())) {
+                type = PARAMETER_TYPE_LABEL_OR_CHANGESET;
+            }
+            VersionListFilter filter;
+            try {
+                filter = getFilter();
+            } catch (PatternSyntaxException ex) {
+                return null;
+            }
+            return new VersionListKey(tfs.getServerUrl(), tfs.getProjectPath(), tfs.getUserName(), type, filter.toString());
+        }
+        
+        /**
+         * Returns the keys of the cached lists of every server path of this parameter.
+         * @return the keys; empty if the parameter is not used by a job with a TFS repository
+         *         or its name filter is invalid.
+         */
+        public List<VersionListKey> getVersionListKeys() {
+            VersionListKey primary = getVersionListKey();
+            if (primary == null) {
+                return Collections.emptyList();
+            }
+            TeamFoundationServerScm tfs = (TeamFoundationServerScm) getParentProject().getScm();
+            List<VersionListKey> keys = new ArrayList<VersionListKey>();
+            for (VersionListSource source : getSources(tfs)) {
+                String serverUrl = source.getServerUrl() != null ? source.getServerUrl() : tfs.getServerUrl();
+                keys.add(new VersionListKey(serverUrl, source.getProjectPath(), tfs.getUserName(), primary.getType(), primary.getFilter()));
+            }
+            return keys;
+        }
+        
+        /**
+         * Drops the cached lists for this parameter so the next page load retrieves
+         * the full history and all labels again, instead of only what is new.
+         */
+        public void refresh() {
+            AbstractProject<?,?> project = getParentProject();
+            if (project == null || !(project.getScm() instanceof TeamFoundationServerScm)) {
+                return;
+            }
+            TeamFoundationServerScm tfs = (TeamFoundationServerScm) project.getScm();
+            VersionListFilter filter;
+            try {
+                filter = getFilter();
+            } catch (PatternSyntaxException ex) {
+                return;
+            }
+            for (VersionListSource source : getSources(tfs)) {
+                Server server = ServerPool.getInstance().get(tfs, source.getServerUrl()).getServer();
+                RepositoryMetadataService.getInstance().invalidate(server, source.getProjectPath(), filter);
+            }
+        }
+        
+        /**
+         * Returns the timings and counters of the repository of this parameter.
+         * @return the statistics; null if the parameter is not used by a job with a TFS repository.
+         */
+        public VersionListStats getStats() {
+            VersionListKey key = getVersionListKey();
+            return key == null ? null : VersionListStatistics.getInstance().get(key.getServerUrl(), key.getProjectPath());
+        }
+        
+        private static VersionListStats getStats(Server server, TeamFoundationServerScm tfs) {
+            return VersionListStatistics.getInstance().get(server.getUrl(), tfs.getProjectPath());
         }
         
         public AbstractProject<?,?> getParentProject() {
-            AbstractProject<?,?> context = null;
-            List<AbstractProject> jobs = Hudson.getInstance().getItems(AbstractProject.class);
-
-            for(AbstractProject<?,?> project : jobs) {
-                ParametersDefinitionProperty property = (ParametersDefinitionProperty) project.getProperty(ParametersDefinitionProperty.class);
-
-                if(property != null) {
-                    List<ParameterDefinition> parameterDefinitions = property.getParameterDefinitions();
+            return ParameterOwnerIndex.getInstance().getOwner(this);
+        }
 
-                    if(parameterDefinitions != null) {
-                        for(ParameterDefinition pd : parameterDefinitions) {
+        public UUID getUuid() {
+            return uuid;
+        }
 
-                            if(pd instanceof TFSVersionSpecParameterDefinition && 
-                                ((TFSVersionSpecParameterDefinition) pd).compareTo(this) == 0) {
-                                
-                                context = project;
-                                break;
-                            }
-                        }
-                    }
-                }
-            }  
-            
-            return context;
+        /**
+         * Gives the definition a uuid of its own, after its job was copied with the uuid of the original.
+         */
+        void renewUuid() {
+            uuid = UUID.randomUUID();
         }
 
         @Override
@@ -250,25 +989,4 @@ public class TFSVersionSpecParameterDefinition extends ParameterDefinition  impl
             return -1;
         }
         
-        protected List<ChangeSet> getChangeSets(Server server, String projectPath) throws IOException, InterruptedException, ParseException {
-            BriefHistoryCommand command = new BriefHistoryCommand(server, projectPath);
-            Reader reader = null;
-            try {
-                reader = server.execute(command.getArguments());
-                return command.parse(reader);
-            } finally {
-                IOUtils.closeQuietly(reader);
-            }
-        }
-        protected List<TFSLabel> getLabels(Server server, String projectPath) throws IOException, InterruptedException, ParseException {
-            LabelsForProjectCommand command = new LabelsForProjectCommand(server, projectPath);
-            Reader reader = null;
-            try {
-                reader = server.execute(command.getArguments());
-                return command.parse(reader);
-            } finally {
-                IOUtils.closeQuietly(reader);
-            }
-        }
-        
 }
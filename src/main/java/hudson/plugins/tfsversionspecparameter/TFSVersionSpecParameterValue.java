@@ -1,15 +1,83 @@
 package hudson.plugins.tfsversionspecparameter;
 
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
 import hudson.model.StringParameterValue;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.export.Exported;
 
+/**
+ * The selected changeset or label of a build. Besides the selected value it records
+ * the changeset the value resolved to and the date of the changeset or label when the
+ * build was triggered, taken from the cached list, so finding out which code a build
+ * used does not need TFS.
+ */
 public class TFSVersionSpecParameterValue extends StringParameterValue {
         private static final long serialVersionUID = -8244244942726975701L;
+
+	/** Suffix of the environment variable with the resolved changeset. */
+	public static final String CHANGESET_SUFFIX = "_CHANGESET";
+	/** Suffix of the environment variable with the date of the changeset or label. */
+	public static final String DATE_SUFFIX = "_DATE";
+
+	private int changeset;
+	/** Milliseconds; 0 if unknown, also for values recorded before the date was. */
+	private long timestamp;
 	
 	@DataBoundConstructor
 	public TFSVersionSpecParameterValue(String name, String value) {
 		super(name, value);
 	}
-        
 
+	/**
+	 * @param changeset the changeset the value resolved to; 0 if unknown
+	 * @param timestamp the date of the changeset or label in milliseconds; {@link Long#MIN_VALUE} if unknown
+	 */
+	public TFSVersionSpecParameterValue(String name, String value, int changeset, long timestamp) {
+		super(name, value);
+		this.changeset = changeset;
+		this.timestamp = timestamp == Long.MIN_VALUE ? 0 : timestamp;
+	}
+
+	/**
+	 * @return the changeset the value resolved to when the build was triggered; 0 if unknown.
+	 *         For a label this is the highest changeset of its items.
+	 */
+	@Exported(visibility = 3)
+	public int getChangeset() {
+		return changeset;
+	}
+
+	/**
+	 * @return the date of the changeset or label when the build was triggered, in ISO 8601
+	 *         format in UTC; null if unknown.
+	 */
+	@Exported(visibility = 3)
+	public String getTimestamp() {
+		if (timestamp == 0) {
+			return null;
+		}
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ENGLISH);
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return format.format(new Date(timestamp));
+	}
+
+	/**
+	 * Adds NAME_CHANGESET and NAME_DATE next to the value, when they are known.
+	 */
+	@Override
+	public void buildEnvVars(AbstractBuild<?,?> build, EnvVars env) {
+		super.buildEnvVars(build, env);
+		if (changeset > 0) {
+			env.put(name.toUpperCase(Locale.ENGLISH) + CHANGESET_SUFFIX, Integer.toString(changeset));
+		}
+		String date = getTimestamp();
+		if (date != null) {
+			env.put(name.toUpperCase(Locale.ENGLISH) + DATE_SUFFIX, date);
+		}
+	}
 }
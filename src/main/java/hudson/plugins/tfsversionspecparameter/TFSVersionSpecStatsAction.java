@@ -0,0 +1,85 @@
+package hudson.plugins.tfsversionspecparameter;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.TransientProjectActionFactory;
+import hudson.plugins.tfsversionspecparameter.stats.VersionListStats;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shows how long retrieving the version lists of the TFS VersionSpec parameters
+ * of a job takes, phase by phase, and how often they are served from the cache.
+ */
+public class TFSVersionSpecStatsAction implements Action {
+
+    private final AbstractProject<?,?> project;
+
+    public TFSVersionSpecStatsAction(AbstractProject<?,?> project) {
+        this.project = project;
+    }
+
+    public AbstractProject<?,?> getProject() {
+        return project;
+    }
+
+    public String getIconFileName() {
+        return "graph.gif";
+    }
+
+    public String getDisplayName() {
+        return "TFS VersionSpec stats";
+    }
+
+    public String getUrlName() {
+        return "tfs-versionspec-stats";
+    }
+
+    /**
+     * Returns the TFS VersionSpec parameters of the job that have statistics.
+     */
+    public List<TFSVersionSpecParameterDefinition> getDefinitions() {
+        return getDefinitions(project);
+    }
+
+    /**
+     * Returns the statistics of the parameter's repository.
+     */
+    public VersionListStats getStats(TFSVersionSpecParameterDefinition definition) {
+        return definition.getStats();
+    }
+
+    static List<TFSVersionSpecParameterDefinition> getDefinitions(AbstractProject<?,?> project) {
+        ParametersDefinitionProperty property = (ParametersDefinitionProperty) project.getProperty(ParametersDefinitionProperty.class);
+        if (property == null) {
+            return Collections.emptyList();
+        }
+        List<TFSVersionSpecParameterDefinition> definitions = new ArrayList<TFSVersionSpecParameterDefinition>();
+        for (ParameterDefinition definition : property.getParameterDefinitions()) {
+            if (definition instanceof TFSVersionSpecParameterDefinition) {
+                definitions.add((TFSVersionSpecParameterDefinition) definition);
+            }
+        }
+        return definitions;
+    }
+
+    /**
+     * Adds the statistics page to every job with a TFS VersionSpec parameter.
+     */
+    @Extension
+    public static class Factory extends TransientProjectActionFactory {
+
+        @Override
+        public Collection<? extends Action> createFor(AbstractProject target) {
+            if (getDefinitions(target).isEmpty()) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new TFSVersionSpecStatsAction(target));
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package hudson.plugins.tfsversionspecparameter;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Hudson;
+import hudson.model.UnprotectedRootAction;
+import hudson.plugins.tfsversionspecparameter.cache.VersionListCache;
+import hudson.plugins.tfsversionspecparameter.cache.VersionListKey;
+import hudson.plugins.tfsversionspecparameter.cache.VersionListPrefetcher;
+import hudson.security.ACL;
+import hudson.security.csrf.CrumbExclusion;
+import hudson.util.Secret;
+import java.io.IOException;
+import java.io.Reader;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Receives notifications of new check-ins and labels from TFS, so the cached
+ * lists of the affected project paths are refreshed right away instead of
+ * when they expire.
+ * <p>
+ * Disabled unless enabled in the global configuration, and every notification
+ * has to carry the configured token in the {@link #TOKEN_HEADER} header. A
+ * notification names the server, the project path and the kind of change as
+ * query parameters, or is the payload of a TFS <tt>tfvc.checkin</tt> service
+ * hook, whose changed items give the paths. Only the matching cached lists are
+ * marked dirty and reloaded in the background, which retrieves just the
+ * changesets checked in since the last load.
+ */
+@Extension
+public class TFSVersionSpecWebhook implements UnprotectedRootAction {
+
+    public static final String URL_NAME = "tfs-versionspec-hook";
+    public static final String TOKEN_HEADER = "X-TFS-VersionSpec-Token";
+
+    public static final String EVENT_CHECKIN = "checkin";
+    public static final String EVENT_LABEL = "label";
+
+    /** Event type of the TFS service hook sent for TFVC check-ins. */
+    private static final String SERVICE_HOOK_CHECKIN = "tfvc.checkin";
+
+    /** Maximum number of characters of a payload that are read; large check-ins list many changes. */
+    private static final int MAX_PAYLOAD = 1024 * 1024;
+
+    private static final Logger LOGGER = Logger.getLogger(TFSVersionSpecWebhook.class.getName());
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        TFSVersionSpecParameterDefinition.DescriptorImpl descriptor =
+                Hudson.getInstance().getDescriptorByType(TFSVersionSpecParameterDefinition.DescriptorImpl.class);
+        if (descriptor == null || !descriptor.isWebhookEnabled()) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!"POST".equals(req.getMethod())) {
+            rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+        // only a header, query parameters end up in access logs
+        if (!isValidToken(descriptor.getWebhookToken(), req.getHeader(TOKEN_HEADER))) {
+            rsp.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        String serverUrl = Util.fixEmptyAndTrim(req.getParameter("server"));
+        Set<String> projectPaths = new LinkedHashSet<String>();
+        String projectPath = Util.fixEmptyAndTrim(req.getParameter("path"));
+        if (projectPath != null) {
+            projectPaths.add(projectPath);
+        }
+        String event = Util.fixEmptyAndTrim(req.getParameter("event"));
+        String contentType = req.getContentType();
+        if (contentType != null && contentType.toLowerCase().contains("json")) {
+            JSONObject payload;
+            try {
+                payload = JSONObject.fromObject(readPayload(req.getReader()));
+            } catch (JSONException ex) {
+                rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid JSON payload");
+                return;
+            }
+            if (SERVICE_HOOK_CHECKIN.equals(payload.optString("eventType"))) {
+                event = EVENT_CHECKIN;
+            }
+            JSONObject resource = payload.optJSONObject("resource");
+            if (resource != null) {
+                if (serverUrl == null) {
+                    serverUrl = getCollectionUrl(resource.optString("url"));
+                }
+                if (projectPath == null) {
+                    projectPaths.addAll(getChangedPaths(resource));
+                }
+            }
+        }
+        if (event != null && !EVENT_CHECKIN.equals(event) && !EVENT_LABEL.equals(event)) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown event " + event);
+            return;
+        }
+
+        int reloaded = notifyChanged(serverUrl, projectPaths, event);
+        rsp.setStatus(HttpServletResponse.SC_ACCEPTED);
+        rsp.setContentType("text/plain;charset=UTF-8");
+        rsp.getWriter().println("Refreshing " + reloaded + " TFS version lists");
+    }
+
+    /**
+     * Marks the cached lists affected by a change as dirty and reloads the lists
+     * of the parameters using them in the background.
+     * @param serverUrl the server of the change; null for all servers
+     * @param projectPaths the paths that changed; empty for all paths
+     * @param event {@link #EVENT_CHECKIN} or {@link #EVENT_LABEL}; null if unknown
+     * @return the number of parameter lists that are reloaded
+     */
+    static int notifyChanged(String serverUrl, Collection<String> projectPaths, String event) {
+        String type = null;
+        if (EVENT_CHECKIN.equals(event)) {
+            type = TFSVersionSpecParameterDefinition.PARAMETER_TYPE_CHANGESET;
+        } else if (EVENT_LABEL.equals(event)) {
+            type = TFSVersionSpecParameterDefinition.PARAMETER_TYPE_LABEL;
+        }
+        int marked = VersionListCache.getInstance().markDirty(serverUrl, projectPaths, type);
+        if (marked == 0) {
+            // nothing cached, the lists are retrieved in full when they are first needed
+            return 0;
+        }
+
+        List<TFSVersionSpecParameterDefinition> affected = new ArrayList<TFSVersionSpecParameterDefinition>();
+        SecurityContext context = SecurityContextHolder.getContext();
+        Authentication previous = context.getAuthentication();
+        context.setAuthentication(ACL.SYSTEM);
+        try {
+            for (Map.Entry<Set<VersionListKey>, TFSVersionSpecParameterDefinition> entry : VersionListPrefetcher.findDefinitions().entrySet()) {
+                for (VersionListKey key : entry.getKey()) {
+                    if ((type == null || usesType(key.getType(), type)) && key.isAffectedBy(serverUrl, projectPaths)) {
+                        affected.add(entry.getValue());
+                        break;
+                    }
+                }
+            }
+        } finally {
+            context.setAuthentication(previous);
+        }
+        LOGGER.log(Level.FINE, "TFS reported a {0} on {1} {2}, reloading {3} version lists",
+                new Object[] { event, serverUrl, projectPaths, affected.size() });
+        VersionListPrefetcher.reload(affected);
+        return affected.size();
+    }
+
+    private static boolean usesType(String parameterType, String type) {
+        return parameterType.equals(type) || TFSVersionSpecParameterDefinition.PARAMETER_TYPE_LABEL_OR_CHANGESET.equals(parameterType);
+    }
+
+    /**
+     * Compares the tokens in constant time.
+     */
+    private static boolean isValidToken(Secret expected, String actual) {
+        String token = expected == null ? null : Util.fixEmpty(expected.getPlainText());
+        if (token == null || actual == null) {
+            return false;
+        }
+        try {
+            return MessageDigest.isEqual(token.getBytes("UTF-8"), actual.getBytes("UTF-8"));
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    private static String readPayload(Reader reader) throws IOException {
+        StringBuilder payload = new StringBuilder();
+        char[] buffer = new char[4096];
+        int read;
+        while (payload.length() < MAX_PAYLOAD && (read = reader.read(buffer)) != -1) {
+            payload.append(buffer, 0, read);
+        }
+        return payload.toString();
+    }
+
+    /**
+     * Returns the server paths of the items changed by a checked in changeset, listed
+     * in the <tt>changes</tt> of the service hook resource.
+     * @return the paths; empty if the resource does not list its changes.
+     */
+    static Set<String> getChangedPaths(JSONObject resource) {
+        Set<String> paths = new LinkedHashSet<String>();
+        JSONArray changes = resource.optJSONArray("changes");
+        if (changes == null) {
+            return paths;
+        }
+        for (int i = 0; i < changes.size(); i++) {
+            JSONObject change = changes.optJSONObject(i);
+            JSONObject item = change == null ? null : change.optJSONObject("item");
+            String path = item == null ? null : Util.fixEmptyAndTrim(item.optString("path"));
+            if (path != null && path.startsWith("$/")) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the collection url of a REST resource url such as
+     * <tt>http://tfs:8080/tfs/DefaultCollection/_apis/tfvc/changesets/18</tt>.
+     * @return the url up to the api path; null if the url is not a REST resource url.
+     */
+    static String getCollectionUrl(String resourceUrl) {
+        if (resourceUrl == null) {
+            return null;
+        }
+        int api = resourceUrl.indexOf("/_apis/");
+        return api > 0 ? resourceUrl.substring(0, api) : null;
+    }
+
+    /**
+     * Lets TFS post notifications without a crumb; they are authenticated by the token.
+     */
+    @Extension
+    public static class CrumbExclusionImpl extends CrumbExclusion {
+
+        @Override
+        public boolean process(HttpServletRequest req, HttpServletResponse resp, FilterChain chain) throws IOException, ServletException {
+            String path = req.getPathInfo();
+            if (path != null && (path.equals("/" + URL_NAME) || path.startsWith("/" + URL_NAME + "/"))) {
+                chain.doFilter(req, resp);
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package hudson.plugins.tfsversionspecparameter.backend;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps track of failing TFS servers. After a number of consecutive failures
+ * calls to the server are refused for a while instead of starting more tf
+ * processes that are bound to fail. Once that time has passed one call is let
+ * through again; it closes the circuit when it succeeds. Only failures to reach
+ * the server count, see {@link #isConnectivityFailure(Throwable)}.
+ */
+public final class CircuitBreaker {
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    public static final long DEFAULT_OPEN_DURATION = 5 * 60 * 1000L;
+
+    /** Error code tf reports when it cannot connect to the server. */
+    private static final String TF_UNABLE_TO_CONNECT = "TF31002";
+
+    private static final CircuitBreaker INSTANCE = new CircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION);
+
+    private final int failureThreshold;
+    private final long openDuration;
+    private final Map<String, State> states = new ConcurrentHashMap<String, State>();
+
+    public CircuitBreaker(int failureThreshold, long openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    public static CircuitBreaker getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Thrown instead of calling a server whose circuit is open.
+     */
+    public static class OpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public OpenException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * @throws OpenException if calls to the server are currently refused.
+     */
+    public void check(String server) throws OpenException {
+        State state = states.get(key(server));
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            long now = System.currentTimeMillis();
+            if (state.openUntil > now) {
+                throw new OpenException("TFS server " + server + " failed " + state.failures
+                        + " times in a row, not retrying for " + ((state.openUntil - now) / 1000) + " seconds");
+            }
+            if (state.failures >= failureThreshold) {
+                // let this call through and refuse others until it has finished
+                state.openUntil = now + openDuration;
+            }
+        }
+    }
+
+    public void recordSuccess(String server) {
+        states.remove(key(server));
+    }
+
+    public void recordFailure(String server) {
+        String key = key(server);
+        State state;
+        synchronized (states) {
+            state = states.get(key);
+            if (state == null) {
+                state = new State();
+                states.put(key, state);
+            }
+        }
+        synchronized (state) {
+            state.failures++;
+            if (state.failures >= failureThreshold) {
+                state.openUntil = System.currentTimeMillis() + openDuration;
+            }
+        }
+    }
+
+    public boolean isOpen(String server) {
+        State state = states.get(key(server));
+        if (state == null) {
+            return false;
+        }
+        synchronized (state) {
+            return state.openUntil > System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Returns true if the failure means the server could not be reached or did not
+     * answer in time, as opposed to the server rejecting or failing the request.
+     */
+    public static boolean isConnectivityFailure(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException
+                    || cause instanceof SocketTimeoutException
+                    || cause instanceof ConnectException
+                    || cause instanceof NoRouteToHostException
+                    || cause instanceof UnknownHostException) {
+                return true;
+            }
+            String message = cause.getMessage();
+            if (message != null && message.contains(TF_UNABLE_TO_CONNECT)) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the failure or one of its causes is of the type.
+     */
+    public static boolean hasCause(Throwable failure, Class<? extends Throwable> type) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private static String key(String server) {
+        return server == null ? "" : server.trim().toLowerCase();
+    }
+
+    private static final class State {
+        private int failures;
+        private long openUntil;
+    }
+}
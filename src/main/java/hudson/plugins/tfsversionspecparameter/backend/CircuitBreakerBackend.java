@@ -0,0 +1,62 @@
+package hudson.plugins.tfsversionspecparameter.backend;
+
+import hudson.plugins.tfs.model.ChangeSet;
+import hudson.plugins.tfs.model.Server;
+import hudson.plugins.tfsversionspecparameter.model.TFSLabel;
+import hudson.plugins.tfsversionspecparameter.model.VersionListFilter;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Refuses calls to servers whose circuit is open and records the outcome of
+ * every other call in the {@link CircuitBreaker}. Only calls that could not reach
+ * the server or timed out count as failures; a server that answers with an error,
+ * e.g. for a path that does not exist, is reachable and keeps its circuit closed.
+ */
+public class CircuitBreakerBackend implements VersionListBackend {
+
+    private final VersionListBackend delegate;
+    private final CircuitBreaker breaker;
+
+    public CircuitBreakerBackend(VersionListBackend delegate, CircuitBreaker breaker) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+    }
+
+    public List<ChangeSet> getChangeSets(Server server, String projectPath, int fromChangeset, int maxItems, VersionListFilter filter)
+            throws IOException, InterruptedException, ParseException {
+        breaker.check(server.getUrl());
+        try {
+            List<ChangeSet> changesets = delegate.getChangeSets(server, projectPath, fromChangeset, maxItems, filter);
+            breaker.recordSuccess(server.getUrl());
+            return changesets;
+        } catch (IOException ex) {
+            record(server.getUrl(), ex);
+            throw ex;
+        }
+    }
+
+    public List<TFSLabel> getLabels(Server server, String projectPath, int maxItems, VersionListFilter filter)
+            throws IOException, InterruptedException, ParseException {
+        breaker.check(server.getUrl());
+        try {
+            List<TFSLabel> labels = delegate.getLabels(server, projectPath, maxItems, filter);
+            breaker.recordSuccess(server.getUrl());
+            return labels;
+        } catch (IOException ex) {
+            record(server.getUrl(), ex);
+            throw ex;
+        }
+    }
+
+    private void record(String server, IOException failure) {
+        if (CircuitBreaker.isConnectivityFailure(failure)) {
+            breaker.recordFailure(server);
+        } else if (!CircuitBreaker.hasCause(failure, RejectedExecutionException.class)) {
+            // the server answered, it just failed the request
+            breaker.recordSuccess(server);
+        }
+    }
+}
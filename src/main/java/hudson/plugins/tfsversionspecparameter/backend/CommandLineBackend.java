@@ -0,0 +1,94 @@
+package hudson.plugins.tfsversionspecparameter.backend;
+
+import hudson.plugins.tfs.model.ChangeSet;
+import hudson.plugins.tfs.model.Server;
+import hudson.plugins.tfs.util.MaskedArgumentListBuilder;
+import hudson.plugins.tfsversionspecparameter.commands.BriefHistoryCommand;
+import hudson.plugins.tfsversionspecparameter.commands.LabelsForProjectCommand;
+import hudson.plugins.tfsversionspecparameter.model.TFSLabel;
+import hudson.plugins.tfsversionspecparameter.model.VersionListFilter;
+import hudson.plugins.tfsversionspecparameter.stats.MeteredReader;
+import hudson.plugins.tfsversionspecparameter.stats.VersionListStatistics;
+import hudson.plugins.tfsversionspecparameter.stats.VersionListStats;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.List;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Retrieves changesets and labels by running the tf command line client.
+ */
+public class CommandLineBackend implements VersionListBackend {
+
+    public List<ChangeSet> getChangeSets(Server server, String projectPath, int fromChangeset, int maxItems, VersionListFilter filter)
+            throws IOException, InterruptedException, ParseException {
+        final BriefHistoryCommand command = new BriefHistoryCommand(server, projectPath, fromChangeset, maxItems, filter);
+        return run(server, projectPath, command.getArguments(), new Parser<List<ChangeSet>>() {
+            public List<ChangeSet> parse(Reader reader, VersionListStats stats) throws IOException, ParseException {
+                List<ChangeSet> changesets = command.parse(reader);
+                stats.addEntries(changesets.size(), 0, 0);
+                return changesets;
+            }
+        });
+    }
+
+    public List<TFSLabel> getLabels(Server server, String projectPath, int maxItems, VersionListFilter filter)
+            throws IOException, InterruptedException, ParseException {
+        final LabelsForProjectCommand command = new LabelsForProjectCommand(server, projectPath, maxItems, filter);
+        return run(server, projectPath, command.getArguments(), new Parser<List<TFSLabel>>() {
+            public List<TFSLabel> parse(Reader reader, VersionListStats stats) throws IOException, ParseException {
+                List<TFSLabel> labels = command.parse(reader);
+                stats.addEntries(labels.size(), command.getDiscardedCount(), command.getFilteredCount());
+                return labels;
+            }
+        });
+    }
+
+    private interface Parser<T> {
+        T parse(Reader reader, VersionListStats stats) throws IOException, ParseException;
+    }
+
+    /**
+     * Runs tf and parses its output. With a {@link StreamingServer} the output is parsed
+     * while tf is running and tf is killed when the parser does not need the rest of it
+     * or fails; otherwise the output is buffered by the server first.
+     */
+    private static <T> T run(Server server, String projectPath, MaskedArgumentListBuilder arguments, Parser<T> parser)
+            throws IOException, InterruptedException, ParseException {
+        VersionListStats stats = VersionListStatistics.getInstance().get(server.getUrl(), projectPath);
+        long started = System.nanoTime();
+        if (server instanceof StreamingServer) {
+            StreamingServer.TfProcess process = ((StreamingServer) server).start(arguments);
+            stats.getSpawn().record(System.nanoTime() - started);
+            Reader reader = new MeteredReader(process.getOutput(), stats, started);
+            boolean finished = false;
+            try {
+                long parseStarted = System.nanoTime();
+                T result = parser.parse(reader, stats);
+                stats.getParse().record(System.nanoTime() - parseStarted);
+                process.finish(reader);
+                finished = true;
+                return result;
+            } finally {
+                if (!finished) {
+                    process.kill();
+                }
+                IOUtils.closeQuietly(reader);
+            }
+        }
+
+        Reader reader = null;
+        try {
+            reader = server.execute(arguments);
+            stats.getSpawn().record(System.nanoTime() - started);
+            reader = new MeteredReader(reader, stats, started);
+            long parseStarted = System.nanoTime();
+            T result = parser.parse(reader, stats);
+            stats.getParse().record(System.nanoTime() - parseStarted);
+            return result;
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+}
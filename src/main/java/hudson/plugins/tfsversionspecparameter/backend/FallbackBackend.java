@@ -0,0 +1,49 @@
+package hudson.plugins.tfsversionspecparameter.backend;
+
+import hudson.plugins.tfs.model.ChangeSet;
+import hudson.plugins.tfs.model.Server;
+import hudson.plugins.tfsversionspecparameter.model.TFSLabel;
+import hudson.plugins.tfsversionspecparameter.model.VersionListFilter;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Uses a primary backend and falls back to a second one when the primary fails,
+ * e.g. the REST API with the tf command line client as fallback for servers
+ * that do not offer the REST API.
+ */
+public class FallbackBackend implements VersionListBackend {
+
+    private static final Logger LOGGER = Logger.getLogger(FallbackBackend.class.getName());
+
+    private final VersionListBackend primary;
+    private final VersionListBackend fallback;
+
+    public FallbackBackend(VersionListBackend primary, VersionListBackend fallback) {
+        this.primary = primary;
+        this.fallback = fallback;
+    }
+
+    public List<ChangeSet> getChangeSets(Server server, String projectPath, int fromChangeset, int maxItems, VersionListFilter filter)
+            throws IOException, InterruptedException, ParseException {
+        try {
+            return primary.getChangeSets(server, projectPath, fromChangeset, maxItems, filter);
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Retrieving changesets of " + projectPath + " failed, falling back", ex);
+            return fallback.getChangeSets(server, projectPath, fromChangeset, maxItems, filter);
+        }
+    }
+
+    public List<TFSLabel> getLabels(Server server, String projectPath, int maxItems, VersionListFilter filter)
+            throws IOException, InterruptedException, ParseException {
+        try {
+            return primary.getLabels(server, projectPath, maxItems, filter);
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Retrieving labels of " + projectPath + " failed, falling back", ex);
+            return fallback.getLabels(server, projectPath, maxItems, filter);
+        }
+    }
+}
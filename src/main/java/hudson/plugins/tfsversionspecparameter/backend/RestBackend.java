@@ -0,0 +1,209 @@
+package hudson.plugins.tfsversionspecparameter.backend;
+
+import hudson.Util;
+import hudson.plugins.tfs.model.ChangeSet;
+import hudson.plugins.tfs.model.Server;
+import hudson.plugins.tfsversionspecparameter.model.NewestLabels;
+import hudson.plugins.tfsversionspecparameter.model.TFSLabel;
+import hudson.plugins.tfsversionspecparameter.model.VersionListFilter;
+import hudson.plugins.tfsversionspecparameter.stats.MeteredReader;
+import hudson.plugins.tfsversionspecparameter.stats.VersionListStatistics;
+import hudson.plugins.tfsversionspecparameter.stats.VersionListStats;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import javax.xml.bind.DatatypeConverter;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Retrieves changesets and labels through the TFVC REST API of the server,
+ * avoiding the start of a tf process for every request.
+ * <p>
+ * The server url must point to a team project collection. Responses are read
+ * completely before the stream is closed, so that the JDK keeps the connection
+ * alive and reuses it for the next request to the same server.
+ */
+public class RestBackend implements VersionListBackend {
+
+    private static final String API_VERSION = "1.0";
+    private static final int PAGE_SIZE = 1000;
+    private static final int CONNECT_TIMEOUT = 30 * 1000;
+    private static final int READ_TIMEOUT = 5 * 60 * 1000;
+
+    public List<ChangeSet> getChangeSets(Server server, String projectPath, int fromChangeset, int maxItems, VersionListFilter filter) throws IOException {
+        List<ChangeSet> list = new ArrayList<ChangeSet>();
+        VersionListStats stats = VersionListStatistics.getInstance().get(server.getUrl(), projectPath);
+        Date cutoff = filter.getCutoff(System.currentTimeMillis());
+        int retrieved = 0;
+        while (true) {
+            int top = pageSize(list.size(), maxItems);
+            StringBuilder query = new StringBuilder();
+            query.append("searchCriteria.itemPath=").append(encode(projectPath));
+            if (fromChangeset > 0) {
+                query.append("&searchCriteria.fromId=").append(fromChangeset);
+            } else if (cutoff != null) {
+                query.append("&searchCriteria.fromDate=").append(encode(DatatypeConverter.printDateTime(toCalendar(cutoff))));
+            }
+            if (filter.getOwner() != null) {
+                query.append("&searchCriteria.author=").append(encode(filter.getOwner()));
+            }
+            query.append("&$top=").append(top).append("&$skip=").append(retrieved);
+            JSONArray values = get(server, "_apis/tfvc/changesets", query.toString(), stats);
+            retrieved += values.size();
+            for (int i = 0; i < values.size(); i++) {
+                JSONObject json = values.getJSONObject(i);
+                ChangeSet changeset = new ChangeSet(json.optString("changesetId"),
+                        parseDate(json.optString("createdDate")),
+                        identity(json.optJSONObject("author")),
+                        json.optString("comment", ""));
+                if (filter.matches(changeset, cutoff)) {
+                    list.add(changeset);
+                }
+            }
+            if (values.size() < top || (maxItems > 0 && list.size() >= maxItems)) {
+                stats.addEntries(list.size(), 0, retrieved - list.size());
+                return list;
+            }
+        }
+    }
+
+    /**
+     * Labels are listed by name, so all pages are retrieved and the newest labels are kept.
+     */
+    public List<TFSLabel> getLabels(Server server, String projectPath, int maxItems, VersionListFilter filter) throws IOException {
+        NewestLabels newest = new NewestLabels(maxItems);
+        VersionListStats stats = VersionListStatistics.getInstance().get(server.getUrl(), projectPath);
+        Date cutoff = filter.getCutoff(System.currentTimeMillis());
+        int retrieved = 0;
+        int matched = 0;
+        while (true) {
+            int top = PAGE_SIZE;
+            StringBuilder query = new StringBuilder();
+            query.append("requestData.labelScope=").append(encode(projectPath));
+            if (!"*".equals(filter.getLabelArgument())) {
+                query.append("&requestData.name=").append(encode(filter.getLabelArgument()));
+            }
+            if (filter.getOwner() != null) {
+                query.append("&requestData.owner=").append(encode(filter.getOwner()));
+            }
+            query.append("&$top=").append(top).append("&$skip=").append(retrieved);
+            JSONArray values = get(server, "_apis/tfvc/labels", query.toString(), stats);
+            retrieved += values.size();
+            for (int i = 0; i < values.size(); i++) {
+                JSONObject json = values.getJSONObject(i);
+                TFSLabel label = new TFSLabel(json.optString("name"),
+                        json.optString("labelScope"),
+                        parseDate(json.optString("modifiedDate")),
+                        identity(json.optJSONObject("owner")),
+                        json.optString("description", ""));
+                if (filter.matches(label, cutoff)) {
+                    newest.add(label);
+                    matched++;
+                }
+            }
+            if (values.size() < top) {
+                List<TFSLabel> labels = newest.toList();
+                stats.addEntries(labels.size(), 0, retrieved - matched);
+                return labels;
+            }
+        }
+    }
+
+    private static Calendar toCalendar(Date date) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTime(date);
+        return calendar;
+    }
+
+    private static int pageSize(int retrieved, int maxItems) {
+        return maxItems > 0 ? Math.min(PAGE_SIZE, maxItems - retrieved) : PAGE_SIZE;
+    }
+
+    /**
+     * Requests a resource of the collection and returns the value array of the response.
+     */
+    private JSONArray get(Server server, String resource, String query, VersionListStats stats) throws IOException {
+        long started = System.nanoTime();
+        String base = server.getUrl();
+        if (!base.endsWith("/")) {
+            base += "/";
+        }
+        URL url = new URL(base + resource + "?" + query + "&api-version=" + API_VERSION);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        connection.setRequestProperty("Accept", "application/json");
+        if (Util.fixEmpty(server.getUserName()) != null) {
+            String credentials = server.getUserName() + ":" + Util.fixNull(server.getUserPassword());
+            connection.setRequestProperty("Authorization", "Basic " + new String(Base64.encodeBase64(credentials.getBytes("UTF-8")), "US-ASCII"));
+        }
+        int status = connection.getResponseCode();
+        stats.getSpawn().record(System.nanoTime() - started);
+        if (status != HttpURLConnection.HTTP_OK) {
+            drain(connection.getErrorStream());
+            throw new IOException("TFS REST request " + url + " failed with status " + status);
+        }
+        Reader in = new MeteredReader(new InputStreamReader(connection.getInputStream(), "UTF-8"), stats, started);
+        String body;
+        try {
+            body = IOUtils.toString(in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        long parseStarted = System.nanoTime();
+        JSONArray values = JSONObject.fromObject(body).optJSONArray("value");
+        stats.getParse().record(System.nanoTime() - parseStarted);
+        return values == null ? new JSONArray() : values;
+    }
+
+    /**
+     * Reads an error response to the end so the connection can be reused.
+     */
+    private static void drain(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            IOUtils.toString(in, "UTF-8");
+        } catch (IOException ex) {
+            // the connection is not reused
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private static String identity(JSONObject identity) {
+        if (identity == null || identity.isNullObject()) {
+            return "";
+        }
+        String uniqueName = identity.optString("uniqueName", "");
+        return uniqueName.length() > 0 ? uniqueName : identity.optString("displayName", "");
+    }
+
+    private static Date parseDate(String value) {
+        if (Util.fixEmpty(value) == null) {
+            return null;
+        }
+        try {
+            return DatatypeConverter.parseDateTime(value).getTime();
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private static String encode(String value) throws IOException {
+        return URLEncoder.encode(value, "UTF-8");
+    }
+}
@@ -0,0 +1,161 @@
+package hudson.plugins.tfsversionspecparameter.backend;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.model.TaskListener;
+import hudson.plugins.tfs.TfTool;
+import hudson.plugins.tfs.model.Server;
+import hudson.plugins.tfs.util.MaskedArgumentListBuilder;
+import hudson.plugins.tfsversionspecparameter.util.OutputTail;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Server that can also start tf and hand out its standard output while the
+ * process is running, so the output is parsed as it is produced instead of
+ * being buffered by {@link Server#execute(MaskedArgumentListBuilder)}.
+ * Standard error goes to a capped {@link OutputTail}.
+ */
+public class StreamingServer extends Server {
+
+    /** tf exits with 1 when a command partially succeeded. */
+    private static final int PARTIAL_SUCCESS_EXIT_CODE = 1;
+
+    private final String executable;
+    private final Launcher launcher;
+    private final FilePath workDir;
+    private final OutputTail errors;
+
+    public StreamingServer(String executable, Launcher launcher, TaskListener listener, FilePath workDir, OutputTail errors,
+            String url, String userName, String password) {
+        super(new TfTool(executable, launcher, listener, workDir), url, userName, password);
+        this.executable = executable;
+        this.launcher = launcher;
+        this.workDir = workDir;
+        this.errors = errors;
+    }
+
+    /**
+     * Starts tf with the arguments.
+     */
+    public TfProcess start(MaskedArgumentListBuilder arguments) throws IOException {
+        String[] command = arguments.toCommandArray();
+        String[] commandLine = new String[command.length + 1];
+        commandLine[0] = executable;
+        System.arraycopy(command, 0, commandLine, 1, command.length);
+        boolean[] masks = arguments.toMaskArray();
+        boolean[] commandMasks = new boolean[masks.length + 1];
+        System.arraycopy(masks, 0, commandMasks, 1, masks.length);
+        Proc proc = launcher.launch().cmds(commandLine).masks(commandMasks).pwd(workDir).readStdout().stderr(errors).start();
+        TfProcess process = new TfProcess(proc, errors.mark());
+        KillSwitch.register(process);
+        return process;
+    }
+
+    /**
+     * A running tf process.
+     */
+    public final class TfProcess {
+        private final Proc proc;
+        private final long errorMark;
+
+        TfProcess(Proc proc, long errorMark) {
+            this.proc = proc;
+            this.errorMark = errorMark;
+        }
+
+        /**
+         * Returns the standard output. Reading it blocks until tf writes or exits; a tf
+         * that hangs is only stopped by killing it, see {@link KillSwitch}.
+         */
+        public Reader getOutput() {
+            return new InputStreamReader(proc.getStdout(), Charset.defaultCharset());
+        }
+
+        /**
+         * Waits for tf to exit, or kills it if it has more output nobody is going to read.
+         * @throws IOException if tf failed, with what it wrote to standard error
+         */
+        public void finish(Reader output) throws IOException, InterruptedException {
+            if (output.read() != -1) {
+                proc.kill();
+                return;
+            }
+            int exitCode = proc.join();
+            if (exitCode != 0 && exitCode != PARTIAL_SUCCESS_EXIT_CODE) {
+                String message = errors.since(errorMark).trim();
+                throw new IOException("tf exited with code " + exitCode + (message.length() > 0 ? ": " + message : ""));
+            }
+        }
+
+        /**
+         * Kills tf if it is still running.
+         */
+        public void kill() {
+            try {
+                proc.kill();
+            } catch (IOException ex) {
+                // the process is gone or cannot be killed anyway
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Collects the tf processes started by a call while it is running, so another
+     * thread can kill them when the call takes too long. Killing a process closes
+     * its output, which ends the read the calling thread is blocked in.
+     */
+    public static final class KillSwitch {
+        private static final ThreadLocal<KillSwitch> CURRENT = new ThreadLocal<KillSwitch>();
+
+        private final List<TfProcess> processes = new ArrayList<TfProcess>();
+        private boolean tripped;
+
+        /**
+         * Registers the processes the current thread starts from now on.
+         */
+        public void attach() {
+            CURRENT.set(this);
+        }
+
+        public void detach() {
+            CURRENT.remove();
+        }
+
+        /**
+         * Kills the processes started so far and any process started afterwards.
+         */
+        public void trip() {
+            List<TfProcess> running;
+            synchronized (this) {
+                tripped = true;
+                running = new ArrayList<TfProcess>(processes);
+                processes.clear();
+            }
+            for (TfProcess process : running) {
+                process.kill();
+            }
+        }
+
+        static void register(TfProcess process) {
+            KillSwitch killSwitch = CURRENT.get();
+            if (killSwitch == null) {
+                return;
+            }
+            synchronized (killSwitch) {
+                if (!killSwitch.tripped) {
+                    killSwitch.processes.add(process);
+                    return;
+                }
+            }
+            process.kill();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package hudson.plugins.tfsversionspecparameter.backend;
+
+import hudson.plugins.tfs.model.ChangeSet;
+import hudson.plugins.tfs.model.Server;
+import hudson.plugins.tfsversionspecparameter.model.TFSLabel;
+import hudson.plugins.tfsversionspecparameter.model.VersionListFilter;
+import hudson.util.DaemonThreadFactory;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Gives up on a backend call that takes longer than the configured time.
+ * <p>
+ * The call runs on a separate thread. When the time is up or the caller is
+ * interrupted, the thread is interrupted and the tf processes it started
+ * through a {@link StreamingServer} are killed, which ends its blocking read
+ * of their output. At most {@link #MAX_THREADS} calls
+ * run at the same time; further calls fail right away instead of piling up
+ * threads behind a hanging server.
+ */
+public class TimeLimitedBackend implements VersionListBackend {
+
+    public static final int MAX_THREADS = 16;
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+            60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new DaemonThreadFactory());
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final VersionListBackend delegate;
+    private final long timeout;
+
+    /**
+     * @param timeout the time in milliseconds a call may take; 0 for no limit.
+     */
+    public TimeLimitedBackend(VersionListBackend delegate, long timeout) {
+        this.delegate = delegate;
+        this.timeout = timeout;
+    }
+
+    public List<ChangeSet> getChangeSets(final Server server, final String projectPath, final int fromChangeset, final int maxItems, final VersionListFilter filter)
+            throws IOException, InterruptedException, ParseException {
+        if (timeout <= 0) {
+            return delegate.getChangeSets(server, projectPath, fromChangeset, maxItems, filter);
+        }
+        return call(new Callable<List<ChangeSet>>() {
+            public List<ChangeSet> call() throws Exception {
+                return delegate.getChangeSets(server, projectPath, fromChangeset, maxItems, filter);
+            }
+        }, "history of " + projectPath);
+    }
+
+    public List<TFSLabel> getLabels(final Server server, final String projectPath, final int maxItems, final VersionListFilter filter)
+            throws IOException, InterruptedException, ParseException {
+        if (timeout <= 0) {
+            return delegate.getLabels(server, projectPath, maxItems, filter);
+        }
+        return call(new Callable<List<TFSLabel>>() {
+            public List<TFSLabel> call() throws Exception {
+                return delegate.getLabels(server, projectPath, maxItems, filter);
+            }
+        }, "labels of " + projectPath);
+    }
+
+    private <T> T call(final Callable<T> callable, String description) throws IOException, InterruptedException, ParseException {
+        final StreamingServer.KillSwitch killSwitch = new StreamingServer.KillSwitch();
+        Future<T> future;
+        try {
+            future = EXECUTOR.submit(new Callable<T>() {
+                public T call() throws Exception {
+                    killSwitch.attach();
+                    try {
+                        return callable.call();
+                    } finally {
+                        killSwitch.detach();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            throw new IOException("Not retrieving the " + description + ", " + MAX_THREADS + " retrievals are already running", ex);
+        }
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            killSwitch.trip();
+            throw new IOException("Retrieving the " + description + " did not finish within " + (timeout / 1000) + " seconds", ex);
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            killSwitch.trip();
+            throw ex;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof ParseException) {
+                throw (ParseException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(String.valueOf(cause));
+        }
+    }
+}
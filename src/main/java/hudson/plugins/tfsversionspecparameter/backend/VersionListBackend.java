@@ -0,0 +1,32 @@
+package hudson.plugins.tfsversionspecparameter.backend;
+
+import hudson.plugins.tfs.model.ChangeSet;
+import hudson.plugins.tfs.model.Server;
+import hudson.plugins.tfsversionspecparameter.model.TFSLabel;
+import hudson.plugins.tfsversionspecparameter.model.VersionListFilter;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.List;
+
+/**
+ * Retrieves changesets and labels from a TFS server.
+ */
+public interface VersionListBackend {
+
+    /**
+     * Returns the changesets of the project path, newest first.
+     * @param fromChangeset the first changeset to return; 0 for the full history
+     * @param maxItems the maximum number of changesets to return; 0 for no limit
+     * @param filter the owner and age the changesets must have
+     */
+    List<ChangeSet> getChangeSets(Server server, String projectPath, int fromChangeset, int maxItems, VersionListFilter filter)
+            throws IOException, InterruptedException, ParseException;
+
+    /**
+     * Returns the labels scoped to the project path.
+     * @param maxItems the maximum number of labels to return; 0 for no limit
+     * @param filter the name, owner and age the labels must have
+     */
+    List<TFSLabel> getLabels(Server server, String projectPath, int maxItems, VersionListFilter filter)
+            throws IOException, InterruptedException, ParseException;
+}
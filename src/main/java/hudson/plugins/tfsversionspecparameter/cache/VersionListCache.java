@@ -0,0 +1,293 @@
+package hudson.plugins.tfsversionspecparameter.cache;
+
+import hudson.plugins.tfsversionspecparameter.stats.VersionListStatistics;
+import hudson.plugins.tfsversionspecparameter.stats.VersionListStats;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller wide cache for the changeset and label lists retrieved from TFS.
+ * <p>
+ * Entries expire after the configured time to live and the least recently
+ * used entries are evicted once the cache holds more than the configured
+ * number of lists. Concurrent requests for the same key share one load, so
+ * only a single tf process is started per key no matter how many users open
+ * the parameters page at the same time.
+ */
+public final class VersionListCache {
+
+    public static final long DEFAULT_TIME_TO_LIVE = 10 * 60 * 1000L;
+    public static final int DEFAULT_MAX_ENTRIES = 200;
+
+    private static final Logger LOGGER = Logger.getLogger(VersionListCache.class.getName());
+
+    private static final VersionListCache INSTANCE = new VersionListCache();
+
+    /**
+     * Loads the value for a key when it is not cached or has expired.
+     */
+    public interface Loader<T> {
+        /**
+         * @param previous the expired value for the key, or null if nothing was cached;
+         *        allows loaders to only fetch what changed since the previous load.
+         */
+        T load(T previous) throws IOException, InterruptedException, ParseException;
+    }
+
+    private volatile long timeToLive = DEFAULT_TIME_TO_LIVE;
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private final Map<VersionListKey, CacheEntry> entries = new LinkedHashMap<VersionListKey, CacheEntry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<VersionListKey, CacheEntry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    public static VersionListCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Changes the time to live and the size of the cache.
+     * @param timeToLive time in milliseconds a loaded list is served from the cache; 0 disables caching.
+     * @param maxEntries maximum number of lists kept in the cache.
+     */
+    public void configure(long timeToLive, int maxEntries) {
+        this.timeToLive = Math.max(0, timeToLive);
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * Returns the cached value for the key, loading it if it is missing or has expired.
+     * If another thread is already loading the key, returns the previous value while it
+     * is being refreshed, or waits for that load when there is no previous value, instead
+     * of starting a new one. When the load fails and there is a previous value, the
+     * previous value is returned and marked as stale.
+     */
+    public <T> T get(VersionListKey key, Loader<T> loader) throws IOException, InterruptedException, ParseException {
+        return load(key, loader, false);
+    }
+
+    /**
+     * Loads the value for the key even if the cached value has not expired yet. Readers
+     * keep getting the cached value until the new one is loaded.
+     */
+    public <T> T refresh(VersionListKey key, Loader<T> loader) throws IOException, InterruptedException, ParseException {
+        return load(key, loader, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T load(VersionListKey key, Loader<T> loader, boolean force) throws IOException, InterruptedException, ParseException {
+        CacheEntry entry;
+        boolean owner = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null || (force && entry.isDone()) || entry.isExpired(System.currentTimeMillis(), timeToLive)) {
+                entry = new CacheEntry(loader, entry);
+                entries.put(key, entry);
+                owner = true;
+            }
+        }
+        VersionListStats stats = VersionListStatistics.getInstance().get(key.getServerUrl(), key.getProjectPath());
+        if (owner) {
+            stats.recordCacheMiss();
+            entry.task.run();
+        } else {
+            stats.recordCacheHit();
+            if (!entry.isDone() && entry.previous != null) {
+                return (T) entry.previous.getLoadedValue();
+            }
+        }
+        try {
+            return (T) entry.task.get();
+        } catch (ExecutionException ex) {
+            CacheEntry restored = restore(key, entry);
+            if (restored != null) {
+                LOGGER.log(Level.FINE, "Serving stale " + key + " after failed refresh", ex.getCause());
+                return (T) restored.getLoadedValue();
+            }
+            throw rethrow(ex.getCause());
+        }
+    }
+
+    /**
+     * Returns true if the value cached for the key is one that could not be refreshed,
+     * because the last attempt to load it failed.
+     */
+    public boolean isStale(VersionListKey key) {
+        synchronized (entries) {
+            CacheEntry entry = entries.get(key);
+            return entry != null && entry.stale;
+        }
+    }
+
+    /**
+     * Returns true if TFS reported a change to the list cached for the key that has
+     * not been loaded yet.
+     */
+    public boolean isDirty(VersionListKey key) {
+        synchronized (entries) {
+            CacheEntry entry = entries.get(key);
+            return entry != null && entry.dirty;
+        }
+    }
+
+    /**
+     * Drops the cached value for the key, the next request loads it again from scratch.
+     */
+    public void invalidate(VersionListKey key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Marks the cached lists affected by a change to the project paths as dirty, so the
+     * next request loads what changed even if they have not expired yet.
+     * @param projectPaths the paths that changed; empty for all paths
+     * @param type the type of the lists to mark; null for all types
+     * @return the number of lists marked
+     * @see VersionListKey#isAffectedBy(String, Collection)
+     */
+    public int markDirty(String serverUrl, Collection<String> projectPaths, String type) {
+        int marked = 0;
+        synchronized (entries) {
+            for (Map.Entry<VersionListKey, CacheEntry> entry : entries.entrySet()) {
+                VersionListKey key = entry.getKey();
+                if ((type == null || type.equals(key.getType())) && key.isAffectedBy(serverUrl, projectPaths)) {
+                    entry.getValue().dirty = true;
+                    marked++;
+                }
+            }
+        }
+        return marked;
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Puts the value that was cached before a failed load back, marked as stale,
+     * or removes the failed entry if there was none.
+     * @return the restored entry; null if there was no previous value.
+     */
+    private CacheEntry restore(VersionListKey key, CacheEntry entry) {
+        CacheEntry restored = entry.previous == null ? null : entry.previous.asStale();
+        synchronized (entries) {
+            if (entries.get(key) == entry) {
+                if (restored != null) {
+                    entries.put(key, restored);
+                } else {
+                    entries.remove(key);
+                }
+            }
+        }
+        return restored;
+    }
+
+    private static IOException rethrow(Throwable cause) throws InterruptedException, ParseException {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+        }
+        if (cause instanceof ParseException) {
+            throw (ParseException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(String.valueOf(cause));
+    }
+
+    private static final class CacheEntry {
+        private final FutureTask<Object> task;
+        private final CacheEntry previous;
+        private final boolean stale;
+        private volatile long loadedAt;
+        /** Set when TFS reported a change, so the entry is reloaded before it expires. */
+        private volatile boolean dirty;
+
+        <T> CacheEntry(final Loader<T> loader, CacheEntry previous) {
+            boolean loaded = previous != null && previous.isDone() && previous.getLoadedValue() != null;
+            this.previous = loaded ? previous.withoutPrevious() : null;
+            this.stale = false;
+            final Object previousValue = this.previous == null ? null : this.previous.getLoadedValue();
+            this.task = new FutureTask<Object>(new Callable<Object>() {
+                @SuppressWarnings("unchecked")
+                public Object call() throws Exception {
+                    Object value = loader.load((T) previousValue);
+                    loadedAt = System.currentTimeMillis();
+                    return value;
+                }
+            });
+        }
+
+        private CacheEntry(CacheEntry loaded, boolean stale) {
+            this.task = loaded.task;
+            this.previous = null;
+            this.stale = stale;
+            this.loadedAt = loaded.loadedAt;
+        }
+
+        /**
+         * Returns this loaded entry without the chain of entries it replaced.
+         */
+        CacheEntry withoutPrevious() {
+            return previous == null ? this : new CacheEntry(this, stale);
+        }
+
+        CacheEntry asStale() {
+            return new CacheEntry(this, true);
+        }
+
+        boolean isDone() {
+            return task.isDone();
+        }
+
+        boolean isExpired(long now, long timeToLive) {
+            if (!task.isDone()) {
+                return false;
+            }
+            return dirty || timeToLive <= 0 || now - loadedAt >= timeToLive;
+        }
+
+        Object getLoadedValue() {
+            if (!task.isDone()) {
+                return null;
+            }
+            try {
+                return task.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException ex) {
+                return null;
+            }
+        }
+    }
+}
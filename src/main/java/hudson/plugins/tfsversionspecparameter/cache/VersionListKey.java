@@ -0,0 +1,130 @@
+package hudson.plugins.tfsversionspecparameter.cache;
+
+import java.util.Collection;
+
+/**
+ * Identifies one cached list of changesets or labels by server url, project
+ * path, the user the server is accessed with, the type of list and the
+ * filter the list was retrieved with.
+ * <p>
+ * TFS server paths and user names are case insensitive, so they are compared
+ * ignoring case.
+ */
+public final class VersionListKey {
+
+    private final String serverUrl;
+    private final String projectPath;
+    private final String userName;
+    private final String type;
+    private final String filter;
+
+    public VersionListKey(String serverUrl, String projectPath, String userName, String type) {
+        this(serverUrl, projectPath, userName, type, "");
+    }
+
+    /**
+     * @param filter description of the filter the list is retrieved with; empty for none
+     */
+    public VersionListKey(String serverUrl, String projectPath, String userName, String type, String filter) {
+        this.serverUrl = normalize(serverUrl);
+        this.projectPath = normalize(projectPath);
+        this.userName = normalize(userName);
+        this.type = type;
+        this.filter = filter == null ? "" : filter;
+    }
+
+    /**
+     * Returns true if a change to the project path on the server can change this list,
+     * because one of the paths contains the other.
+     * @param serverUrl the server url; null for any server
+     * @param projectPath the project path; null for any path
+     */
+    public boolean isAffectedBy(String serverUrl, String projectPath) {
+        if (serverUrl != null && !trimSlash(this.serverUrl).equals(trimSlash(normalize(serverUrl)))) {
+            return false;
+        }
+        if (projectPath == null) {
+            return true;
+        }
+        String changed = trimSlash(normalize(projectPath));
+        String listed = trimSlash(this.projectPath);
+        return listed.equals(changed) || listed.startsWith(changed + "/") || changed.startsWith(listed + "/");
+    }
+
+    /**
+     * Returns true if a change to any of the project paths on the server can change this list.
+     * @param serverUrl the server url; null for any server
+     * @param projectPaths the changed paths; empty for any path
+     */
+    public boolean isAffectedBy(String serverUrl, Collection<String> projectPaths) {
+        if (projectPaths.isEmpty()) {
+            return isAffectedBy(serverUrl, (String) null);
+        }
+        for (String projectPath : projectPaths) {
+            if (isAffectedBy(serverUrl, projectPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String trimSlash(String value) {
+        return value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase();
+    }
+
+    public String getServerUrl() {
+        return serverUrl;
+    }
+
+    public String getProjectPath() {
+        return projectPath;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof VersionListKey)) {
+            return false;
+        }
+        VersionListKey other = (VersionListKey) obj;
+        return serverUrl.equals(other.serverUrl)
+                && projectPath.equals(other.projectPath)
+                && userName.equals(other.userName)
+                && (type == null ? other.type == null : type.equals(other.type))
+                && filter.equals(other.filter);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = serverUrl.hashCode();
+        result = 31 * result + projectPath.hashCode();
+        result = 31 * result + userName.hashCode();
+        result = 31 * result + (type == null ? 0 : type.hashCode());
+        result = 31 * result + filter.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        String key = type + "@" + serverUrl + ":" + projectPath + " as " + userName;
+        return filter.length() == 0 ? key : key + " where " + filter;
+    }
+}
@@ -0,0 +1,217 @@
+package hudson.plugins.tfsversionspecparameter.cache;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Hudson;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.TaskListener;
+import hudson.plugins.tfsversionspecparameter.TFSVersionSpecParameterDefinition;
+import hudson.security.ACL;
+import hudson.util.DaemonThreadFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+
+/**
+ * Periodically refreshes the cached lists of every TFS VersionSpec parameter,
+ * so that the parameters page is rendered from memory instead of waiting for tf.
+ * <p>
+ * Runs every minute but only starts a new round once the configured prefetch
+ * interval has passed. The lists of a round are refreshed on a small worker
+ * pool, each one delayed by a random part of the interval so that the jobs
+ * do not all hit the TFS server at the same time. Each round also deletes the
+ * stored snapshots of lists that no parameter uses anymore.
+ */
+@Extension
+public class VersionListPrefetcher extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(VersionListPrefetcher.class.getName());
+
+    private static final ScheduledThreadPoolExecutor WORKERS = new ScheduledThreadPoolExecutor(
+            TFSVersionSpecParameterDefinition.DEFAULT_PREFETCH_THREADS, new DaemonThreadFactory());
+
+    private final Random random = new Random();
+    private long nextRound;
+
+    public VersionListPrefetcher() {
+        super("TFS VersionSpec parameter prefetch");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return MIN;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        TFSVersionSpecParameterDefinition.DescriptorImpl descriptor =
+                Hudson.getInstance().getDescriptorByType(TFSVersionSpecParameterDefinition.DescriptorImpl.class);
+        if (descriptor == null || descriptor.getPrefetchInterval() <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now < nextRound) {
+            return;
+        }
+        if (!WORKERS.getQueue().isEmpty()) {
+            listener.getLogger().println("Previous prefetch round has not finished yet, skipping");
+            return;
+        }
+        long interval = descriptor.getPrefetchInterval() * MIN;
+        nextRound = now + interval;
+        WORKERS.setCorePoolSize(descriptor.getPrefetchThreads());
+
+        SecurityContext context = SecurityContextHolder.getContext();
+        Authentication previous = context.getAuthentication();
+        context.setAuthentication(ACL.SYSTEM);
+        try {
+            int deleted = VersionListStore.getInstance().retainAll(getStoredKeys(getAllDefinitions()));
+            if (deleted > 0) {
+                listener.getLogger().println("Deleted " + deleted + " snapshots of TFS version lists no longer used");
+            }
+            Map<Set<VersionListKey>, TFSVersionSpecParameterDefinition> definitions = findDefinitions();
+            listener.getLogger().println("Prefetching " + definitions.size() + " TFS version lists");
+            for (final TFSVersionSpecParameterDefinition definition : definitions.values()) {
+                long delay = (long) (random.nextDouble() * interval / 2);
+                WORKERS.schedule(new Runnable() {
+                    public void run() {
+                        prefetch(definition);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            context.setAuthentication(previous);
+        }
+    }
+
+    /**
+     * Reloads the lists of the definitions on the prefetch workers right away. Only the
+     * cached lists that have expired or were marked dirty are retrieved from TFS, and
+     * the rebuilt lists are published so the next page load renders them from memory.
+     */
+    public static void reload(Collection<TFSVersionSpecParameterDefinition> definitions) {
+        for (final TFSVersionSpecParameterDefinition definition : definitions) {
+            WORKERS.execute(new Runnable() {
+                public void run() {
+                    SecurityContext context = SecurityContextHolder.getContext();
+                    Authentication previous = context.getAuthentication();
+                    context.setAuthentication(ACL.SYSTEM);
+                    try {
+                        definition.loadSnapshot();
+                    } finally {
+                        context.setAuthentication(previous);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns one parameter definition for each distinct set of cached lists, keyed by the
+     * lists of all its server paths. Parameters sharing the path of their job but listing
+     * different additional paths are distinct. The caller must be able to see all jobs.
+     */
+    public static Map<Set<VersionListKey>, TFSVersionSpecParameterDefinition> findDefinitions() {
+        Map<Set<VersionListKey>, TFSVersionSpecParameterDefinition> definitions = new LinkedHashMap<Set<VersionListKey>, TFSVersionSpecParameterDefinition>();
+        for (TFSVersionSpecParameterDefinition definition : getAllDefinitions()) {
+            Set<VersionListKey> keys = new HashSet<VersionListKey>(definition.getVersionListKeys());
+            if (!keys.isEmpty() && !definitions.containsKey(keys)) {
+                definitions.put(keys, definition);
+            }
+        }
+        return definitions;
+    }
+
+    /**
+     * Deletes the stored snapshots of the lists of the definitions of a deleted job,
+     * unless the lists are also used by other jobs.
+     * @param definitions the definitions of the deleted job
+     */
+    public static void deleteSnapshots(Collection<TFSVersionSpecParameterDefinition> definitions) {
+        Set<VersionListKey> keys = getStoredKeys(definitions);
+        if (keys.isEmpty()) {
+            return;
+        }
+        SecurityContext context = SecurityContextHolder.getContext();
+        Authentication previous = context.getAuthentication();
+        context.setAuthentication(ACL.SYSTEM);
+        try {
+            keys.removeAll(getStoredKeys(getAllDefinitions()));
+        } finally {
+            context.setAuthentication(previous);
+        }
+        for (VersionListKey key : keys) {
+            VersionListStore.getInstance().delete(key);
+        }
+    }
+
+    private static List<TFSVersionSpecParameterDefinition> getAllDefinitions() {
+        List<TFSVersionSpecParameterDefinition> definitions = new ArrayList<TFSVersionSpecParameterDefinition>();
+        List<AbstractProject> projects = Hudson.getInstance().getAllItems(AbstractProject.class);
+        for (AbstractProject<?,?> project : projects) {
+            ParametersDefinitionProperty property = (ParametersDefinitionProperty) project.getProperty(ParametersDefinitionProperty.class);
+            if (property == null || property.getParameterDefinitions() == null) {
+                continue;
+            }
+            for (ParameterDefinition pd : property.getParameterDefinitions()) {
+                if (pd instanceof TFSVersionSpecParameterDefinition) {
+                    definitions.add((TFSVersionSpecParameterDefinition) pd);
+                }
+            }
+        }
+        return definitions;
+    }
+
+    /**
+     * Returns the keys the lists of the definitions are stored under, a combined
+     * label or changeset list being stored as a changeset and a label list.
+     */
+    private static Set<VersionListKey> getStoredKeys(Collection<TFSVersionSpecParameterDefinition> definitions) {
+        Set<VersionListKey> keys = new HashSet<VersionListKey>();
+        for (TFSVersionSpecParameterDefinition definition : definitions) {
+            for (VersionListKey key : definition.getVersionListKeys()) {
+                if (TFSVersionSpecParameterDefinition.PARAMETER_TYPE_LABEL_OR_CHANGESET.equals(key.getType())) {
+                    keys.add(new VersionListKey(key.getServerUrl(), key.getProjectPath(), key.getUserName(),
+                            TFSVersionSpecParameterDefinition.PARAMETER_TYPE_CHANGESET, key.getFilter()));
+                    keys.add(new VersionListKey(key.getServerUrl(), key.getProjectPath(), key.getUserName(),
+                            TFSVersionSpecParameterDefinition.PARAMETER_TYPE_LABEL, key.getFilter()));
+                } else {
+                    keys.add(key);
+                }
+            }
+        }
+        return keys;
+    }
+
+    private void prefetch(TFSVersionSpecParameterDefinition definition) {
+        SecurityContext context = SecurityContextHolder.getContext();
+        Authentication previous = context.getAuthentication();
+        context.setAuthentication(ACL.SYSTEM);
+        try {
+            definition.prefetch();
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to prefetch TFS version list for " + definition.getName(), ex);
+        } catch (InterruptedException ex) {
+            LOGGER.log(Level.WARNING, "Interrupted while prefetching TFS version list for " + definition.getName(), ex);
+        } catch (Exception ex) {
+            LOGGER.log(Level.WARNING, "Failed to prefetch TFS version list for " + definition.getName(), ex);
+        } finally {
+            context.setAuthentication(previous);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package hudson.plugins.tfsversionspecparameter.cache;
+
+import hudson.Util;
+import hudson.model.Hudson;
+import hudson.plugins.tfsversionspecparameter.model.ChangeSetHistory;
+import hudson.plugins.tfsversionspecparameter.model.TFSLabel;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Keeps a copy of every retrieved changeset and label list on disk, under
+ * JENKINS_HOME/tfs-versionspec-parameter, so that after a restart the lists
+ * are read from disk and only refreshed instead of being retrieved from scratch.
+ * <p>
+ * Each list is stored in its own compact binary file, written to a temporary
+ * file first and then renamed so that readers never see a partial snapshot.
+ * A snapshot records the maximum number of entries its list was retrieved with
+ * and is ignored once the maximum is changed, so the list is retrieved in full
+ * again instead of only being topped up with new entries.
+ * Snapshots of lists no parameter uses anymore are deleted by the prefetcher
+ * and when a job is deleted.
+ */
+public final class VersionListStore {
+
+    private static final Logger LOGGER = Logger.getLogger(VersionListStore.class.getName());
+
+    private static final int MAGIC = 0x54465356;
+    private static final int FORMAT_VERSION = 4;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final String SUFFIX = ".snapshot";
+
+    private static final VersionListStore INSTANCE = new VersionListStore();
+
+    public static VersionListStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Reads the stored history for the key.
+     * @param maxItems the maximum number of changesets the history is retrieved with
+     * @return the history; null if there is no readable snapshot retrieved with the same maximum.
+     */
+    public ChangeSetHistory readChangeSetHistory(VersionListKey key, int maxItems) {
+        DataInputStream in = open(key, maxItems);
+        if (in == null) {
+            return null;
+        }
+        try {
+            int count = in.readInt();
+            int[] ids = new int[count];
+            long[] dates = new long[count];
+            String[] users = new String[count];
+            String[] messages = new String[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = in.readInt();
+                Date date = readDate(in);
+                dates[i] = date == null ? Long.MIN_VALUE : date.getTime();
+                users[i] = in.readUTF();
+                messages[i] = readString(in);
+            }
+            return ChangeSetHistory.fromColumns(ids, dates, users, messages);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Ignoring unreadable snapshot for " + key, ex);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Reads the stored labels for the key.
+     * @param maxItems the maximum number of labels the list is retrieved with
+     * @return the labels; null if there is no readable snapshot retrieved with the same maximum.
+     */
+    public List<TFSLabel> readLabels(VersionListKey key, int maxItems) {
+        DataInputStream in = open(key, maxItems);
+        if (in == null) {
+            return null;
+        }
+        try {
+            int count = in.readInt();
+            List<TFSLabel> labels = new ArrayList<TFSLabel>(count);
+            for (int i = 0; i < count; i++) {
+                String label = readString(in);
+                String scope = in.readUTF();
+                Date date = readDate(in);
+                String owner = in.readUTF();
+                String comment = readString(in);
+                int changeset = in.readInt();
+                labels.add(new TFSLabel(label, scope, date, owner, comment, changeset));
+            }
+            return Collections.unmodifiableList(labels);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Ignoring unreadable snapshot for " + key, ex);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * @param maxItems the maximum number of changesets the history was retrieved with
+     */
+    public void write(VersionListKey key, ChangeSetHistory history, int maxItems) {
+        DataOutputStream out = null;
+        File temp = null;
+        try {
+            temp = createTempFile(key);
+            out = createOutput(temp, maxItems);
+            out.writeInt(history.size());
+            for (int i = 0; i < history.size(); i++) {
+                out.writeInt(history.getId(i));
+                writeDate(out, history.getDate(i));
+                out.writeUTF(Util.fixNull(history.getUser(i)));
+                writeString(out, history.getMessage(i));
+            }
+            out.close();
+            out = null;
+            commit(temp, getFile(key));
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to write snapshot for " + key, ex);
+        } finally {
+            abort(out, temp);
+        }
+    }
+
+    /**
+     * @param maxItems the maximum number of labels the list was retrieved with
+     */
+    public void write(VersionListKey key, List<TFSLabel> labels, int maxItems) {
+        DataOutputStream out = null;
+        File temp = null;
+        try {
+            temp = createTempFile(key);
+            out = createOutput(temp, maxItems);
+            out.writeInt(labels.size());
+            for (TFSLabel label : labels) {
+                writeString(out, label.getLabel());
+                out.writeUTF(Util.fixNull(label.getProjectScope()));
+                writeDate(out, label.getDate());
+                out.writeUTF(Util.fixNull(label.getOwner()));
+                writeString(out, label.getComment());
+                out.writeInt(label.getChangeset());
+            }
+            out.close();
+            out = null;
+            commit(temp, getFile(key));
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to write snapshot for " + key, ex);
+        } finally {
+            abort(out, temp);
+        }
+    }
+
+    public void delete(VersionListKey key) {
+        File file = getFile(key);
+        if (file.exists() && !file.delete()) {
+            LOGGER.log(Level.WARNING, "Failed to delete snapshot {0}", file);
+        }
+    }
+
+    /**
+     * Deletes the snapshots of all lists but the ones of the keys, such as the lists
+     * of parameters that were removed or reconfigured since they were stored.
+     * @return the number of snapshots deleted
+     */
+    public int retainAll(Collection<VersionListKey> keys) {
+        File[] files = getDirectory().listFiles();
+        if (files == null) {
+            return 0;
+        }
+        Set<String> retained = new HashSet<String>();
+        for (VersionListKey key : keys) {
+            retained.add(getFile(key).getName());
+        }
+        int deleted = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX) && !retained.contains(file.getName())) {
+                if (file.delete()) {
+                    deleted++;
+                } else {
+                    LOGGER.log(Level.WARNING, "Failed to delete snapshot {0}", file);
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private DataInputStream open(VersionListKey key, int maxItems) {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                LOGGER.log(Level.FINE, "Ignoring snapshot {0} written in an unknown format", file);
+                IOUtils.closeQuietly(in);
+                return null;
+            }
+            if (in.readInt() != maxItems) {
+                // a list retrieved with another maximum lacks entries or has too many
+                LOGGER.log(Level.FINE, "Ignoring snapshot {0} retrieved with another maximum number of entries", file);
+                IOUtils.closeQuietly(in);
+                return null;
+            }
+            return in;
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to read snapshot " + file, ex);
+            IOUtils.closeQuietly(in);
+            return null;
+        }
+    }
+
+    private DataOutputStream createOutput(File file, int maxItems) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(maxItems);
+        return out;
+    }
+
+    private File createTempFile(VersionListKey key) throws IOException {
+        File directory = getDirectory();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        return File.createTempFile(getFile(key).getName(), ".tmp", directory);
+    }
+
+    private static void commit(File temp, File target) throws IOException {
+        if (temp.renameTo(target)) {
+            return;
+        }
+        // renaming over an existing file fails on some platforms, such as Windows
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Unable to replace " + target);
+        }
+        if (!temp.renameTo(target)) {
+            throw new IOException("Unable to rename " + temp + " to " + target);
+        }
+    }
+
+    private static void abort(DataOutputStream out, File temp) {
+        if (out != null) {
+            IOUtils.closeQuietly(out);
+        }
+        if (temp != null && temp.exists()) {
+            temp.delete();
+        }
+    }
+
+    private static File getDirectory() {
+        return new File(Hudson.getInstance().getRootDir(), "tfs-versionspec-parameter");
+    }
+
+    private static File getFile(VersionListKey key) {
+        return new File(getDirectory(), Util.getDigestOf(key.toString()) + SUFFIX);
+    }
+
+    private static void writeDate(DataOutputStream out, Date date) throws IOException {
+        out.writeLong(date == null ? NO_DATE : date.getTime());
+    }
+
+    private static Date readDate(DataInputStream in) throws IOException {
+        long time = in.readLong();
+        return time == NO_DATE ? null : new Date(time);
+    }
+
+    /**
+     * Writes a string that may be longer than the 64k limit of writeUTF.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
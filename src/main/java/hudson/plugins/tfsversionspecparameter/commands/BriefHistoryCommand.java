@@ -8,6 +8,7 @@ import hudson.plugins.tfs.model.ChangeSet;
 import hudson.plugins.tfs.util.DateUtil;
 import hudson.plugins.tfs.util.TextTableParser;
 import hudson.plugins.tfs.util.MaskedArgumentListBuilder;
+import hudson.plugins.tfsversionspecparameter.model.VersionListFilter;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -15,6 +16,7 @@ import java.io.Reader;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -25,17 +27,56 @@ import java.util.List;
 public class BriefHistoryCommand extends AbstractCommand implements ParseableCommand<List<ChangeSet>> {
    
     private final String projectPath;
+    private final int fromChangeset;
+    private final int maxItems;
+    private final VersionListFilter filter;
+    private final long now;
     
     /**
      * 
      * @param projectPath the project path to get the history for
-     * @param fromTimestamp the timestamp to get history from
-     * @param toTimestamp the timestamp to get history to
      */
     public BriefHistoryCommand(ServerConfigurationProvider provider,
             String projectPath) {
+        this(provider, projectPath, 0);
+    }
+
+    /**
+     * 
+     * @param projectPath the project path to get the history for
+     * @param fromChangeset the first changeset to include in the history; 0 for the full history
+     */
+    public BriefHistoryCommand(ServerConfigurationProvider provider,
+            String projectPath, int fromChangeset) {
+        this(provider, projectPath, fromChangeset, 0);
+    }
+
+    /**
+     * 
+     * @param projectPath the project path to get the history for
+     * @param fromChangeset the first changeset to include in the history; 0 for the full history
+     * @param maxItems the maximum number of changesets to retrieve; 0 for no limit
+     */
+    public BriefHistoryCommand(ServerConfigurationProvider provider,
+            String projectPath, int fromChangeset, int maxItems) {
+        this(provider, projectPath, fromChangeset, maxItems, VersionListFilter.NONE);
+    }
+
+    /**
+     * 
+     * @param projectPath the project path to get the history for
+     * @param fromChangeset the first changeset to include in the history; 0 for the full history
+     * @param maxItems the maximum number of changesets to retrieve; 0 for no limit
+     * @param filter the owner and age the changesets must have
+     */
+    public BriefHistoryCommand(ServerConfigurationProvider provider,
+            String projectPath, int fromChangeset, int maxItems, VersionListFilter filter) {
         super(provider);
         this.projectPath = projectPath;
+        this.fromChangeset = fromChangeset;
+        this.maxItems = maxItems;
+        this.filter = filter;
+        this.now = System.currentTimeMillis();
     }
 
     /**
@@ -48,6 +89,17 @@ public class BriefHistoryCommand extends AbstractCommand implements ParseableCom
         arguments.add(projectPath);
         arguments.add("-noprompt");
         arguments.add("-recursive");
+        if (fromChangeset > 0) {
+            arguments.add("-version:C" + fromChangeset + "~T");
+        } else if (filter.getCutoffVersionSpec(now) != null) {
+            arguments.add("-version:" + filter.getCutoffVersionSpec(now) + "~T");
+        }
+        if (filter.getOwner() != null) {
+            arguments.add("-user:" + filter.getOwner());
+        }
+        if (maxItems > 0) {
+            arguments.add("-stopafter:" + maxItems);
+        }
         arguments.add("-format:brief");
         addServerArgument(arguments);
         addLoginArgument(arguments);
@@ -55,12 +107,14 @@ public class BriefHistoryCommand extends AbstractCommand implements ParseableCom
     }
    
     /**
-     * Parse the data in the reader and return a list of change sets.
+     * Parse the data in the reader and return a list of change sets. Parsing stops at
+     * the first changeset older than the filter allows, since the history is newest first.
      * @param consoleReader console output
      * @return a list of change sets from the console output; empty if none could be found.
      */
     public List<ChangeSet> parse(Reader consoleReader) throws ParseException, IOException {
         List<ChangeSet> list = new ArrayList<ChangeSet>();
+        Date cutoff = filter.getCutoff(now);
 
         TextTableParser parser = new TextTableParser(new BufferedReader(consoleReader), 1);
         while (parser.nextRow()) {
@@ -68,7 +122,12 @@ public class BriefHistoryCommand extends AbstractCommand implements ParseableCom
                 DateUtil.parseDate(parser.getColumn(2)),
                 parser.getColumn(1),
                 Util.fixNull(parser.getColumn(3)));
-                list.add(changeset);
+                if (cutoff != null && changeset.getDate() != null && changeset.getDate().before(cutoff)) {
+                    break;
+                }
+                if (filter.matches(changeset, cutoff)) {
+                    list.add(changeset);
+                }
         }
         return list;
     }
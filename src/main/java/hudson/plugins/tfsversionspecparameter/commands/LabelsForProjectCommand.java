@@ -8,15 +8,16 @@ import hudson.plugins.tfs.model.ChangeSet;
 import hudson.plugins.tfs.util.DateUtil;
 import hudson.plugins.tfs.util.TextTableParser;
 import hudson.plugins.tfs.util.MaskedArgumentListBuilder;
+import hudson.plugins.tfsversionspecparameter.model.NewestLabels;
 import hudson.plugins.tfsversionspecparameter.model.TFSLabel;
+import hudson.plugins.tfsversionspecparameter.model.VersionListFilter;
 import hudson.plugins.tfsversionspecparameter.util.LabelsParser;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.text.ParseException;
-import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -28,23 +29,51 @@ import java.util.regex.Pattern;
  */
 public class LabelsForProjectCommand extends AbstractCommand implements ParseableCommand<List<TFSLabel>> {
     
-    private static final Pattern PROJECT_PATTERN = Pattern.compile("\\$/[a-zA-Z0-9 _-]+");
+    /** The team project of a server path, which is the scope tf labels is asked for. */
+    private static final Pattern PROJECT_PATTERN = Pattern.compile("\\$/[^/]+");
     private final String projectPath;
+    private final String scope;
+    private final int maxItems;
+    private final VersionListFilter filter;
+    private int discardedCount;
+    private int filteredCount;
     
     /**
      * 
-     * @param projectPath the project path to get the history for
-     * @param fromTimestamp the timestamp to get history from
-     * @param toTimestamp the timestamp to get history to
+     * @param projectPath the project path to get the labels for
      */
     public LabelsForProjectCommand(ServerConfigurationProvider provider,
             String projectPath) {
+        this(provider, projectPath, 0);
+    }
+
+    /**
+     * 
+     * @param projectPath the project path to get the labels for
+     * @param maxItems the maximum number of labels to return; 0 for no limit
+     */
+    public LabelsForProjectCommand(ServerConfigurationProvider provider,
+            String projectPath, int maxItems) {
+        this(provider, projectPath, maxItems, VersionListFilter.NONE);
+    }
+
+    /**
+     * 
+     * @param projectPath the project path to get the labels for
+     * @param maxItems the maximum number of labels to return; 0 for no limit
+     * @param filter the name, owner and age the labels must have
+     */
+    public LabelsForProjectCommand(ServerConfigurationProvider provider,
+            String projectPath, int maxItems, VersionListFilter filter) {
         super(provider);
+        this.maxItems = maxItems;
+        this.filter = filter;
+        this.projectPath = projectPath;
         Matcher matcher = PROJECT_PATTERN.matcher(projectPath);
         if (matcher.find())
-            this.projectPath = matcher.group();
+            this.scope = matcher.group();
         else            
-            this.projectPath = projectPath;
+            this.scope = projectPath;
     }
 
     /**
@@ -57,27 +86,52 @@ public class LabelsForProjectCommand extends AbstractCommand implements Parseabl
         arguments.add("labels");
         arguments.add("-noprompt");
         arguments.add("-format:detailed");
-        arguments.add("-owner:*");
+        arguments.add("-owner:" + (filter.getOwner() != null ? filter.getOwner() : "*"));
+        arguments.add(filter.getLabelArgument() + "@" + scope);
         addServerArgument(arguments);
         addLoginArgument(arguments);
         return arguments;
     }
    
     /**
-     * Parse the data in the reader and return a list of change sets.
+     * Parse the data in the reader and return a list of labels. tf lists labels by name,
+     * so the whole output is read and the newest labels are kept.
      * @param consoleReader console output
-     * @return a list of change sets from the console output; empty if none could be found.
+     * @return the newest labels from the console output, newest first; empty if none could be found.
      */
     @Override
     public List<TFSLabel> parse(Reader consoleReader) throws ParseException, IOException {
-        List<TFSLabel> list = new ArrayList<TFSLabel>();
-        LabelsParser parser = new LabelsParser(new BufferedReader(consoleReader));
+        NewestLabels newest = new NewestLabels(maxItems);
+        LabelsParser parser = new LabelsParser(consoleReader, projectPath);
+        Date cutoff = filter.getCutoff(System.currentTimeMillis());
+        int filtered = 0;
         while (parser.nextLabel()) {
-            if (projectPath.equalsIgnoreCase(parser.getProjectScope())){
-                TFSLabel label = new TFSLabel(parser.getLabel(), parser.getProjectScope(), parser.getDate(), parser.getOwner(), parser.getComment());
-                list.add(label);
+            TFSLabel label = new TFSLabel(parser.getLabel(), parser.getProjectScope(), parser.getDate(), parser.getOwner(), parser.getComment(),
+                    parser.getChangeset());
+            if (!filter.matches(label, cutoff)) {
+                filtered++;
+                continue;
             }
+            newest.add(label);
         }
-        return list;
+        discardedCount = parser.getDiscardedCount();
+        filteredCount = filtered;
+        return newest.toList();
+    }
+
+    /**
+     * @return the number of labels skipped by the last {@link #parse(Reader)} because they
+     *         are not scoped to the project path.
+     */
+    public int getDiscardedCount() {
+        return discardedCount;
+    }
+
+    /**
+     * @return the number of labels skipped by the last {@link #parse(Reader)} because they
+     *         do not match the filter.
+     */
+    public int getFilteredCount() {
+        return filteredCount;
     }
 }
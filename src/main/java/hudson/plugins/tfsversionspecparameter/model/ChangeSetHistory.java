@@ -0,0 +1,271 @@
+package hudson.plugins.tfsversionspecparameter.model;
+
+import hudson.plugins.tfs.model.ChangeSet;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, newest first list of changesets together with the highest
+ * changeset number it contains, so that a refresh only has to ask TFS for
+ * the changesets checked in after it.
+ * <p>
+ * The changesets are kept in columns of primitive arrays instead of one
+ * {@link ChangeSet} per entry. User names are shared between entries and
+ * comments are cut to their first {@link #MAX_MESSAGE_LENGTH} characters,
+ * since only the beginning is ever shown in the select box.
+ */
+public class ChangeSetHistory {
+
+    public static final int MAX_MESSAGE_LENGTH = 200;
+
+    /** Date of a changeset without a date. */
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private final int[] ids;
+    private final long[] dates;
+    private final String[] users;
+    private final String[] messages;
+    private final int highestChangeset;
+    /** True if the ids are in strictly descending order, so they can be binary searched. */
+    private final boolean descending;
+
+    public ChangeSetHistory(List<ChangeSet> changesets) {
+        this(new Columns(changesets.size()).add(changesets, 0, changesets.size()));
+    }
+
+    private ChangeSetHistory(Columns columns) {
+        this.ids = columns.ids;
+        this.dates = columns.dates;
+        this.users = columns.users;
+        this.messages = columns.messages;
+        int highest = 0;
+        boolean sorted = true;
+        for (int i = 0; i < ids.length; i++) {
+            highest = Math.max(highest, ids[i]);
+            sorted &= i == 0 || ids[i - 1] > ids[i];
+        }
+        this.highestChangeset = highest;
+        this.descending = sorted;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * @return the date of the changeset; null if it has none.
+     */
+    public Date getDate(int index) {
+        return dates[index] == NO_DATE ? null : new Date(dates[index]);
+    }
+
+    /**
+     * @return the date of the changeset in milliseconds; {@link Long#MIN_VALUE} if it has none.
+     */
+    public long getTime(int index) {
+        return dates[index];
+    }
+
+    public String getUser(int index) {
+        return users[index];
+    }
+
+    public String getMessage(int index) {
+        return messages[index];
+    }
+
+    /**
+     * @return the position of the changeset in the history; -1 if it is not part of it.
+     */
+    public int indexOf(int id) {
+        if (descending) {
+            int low = 0;
+            int high = ids.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (ids[middle] > id) {
+                    low = middle + 1;
+                } else if (ids[middle] < id) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a view of the history as changesets, which are created when they are accessed.
+     */
+    public List<ChangeSet> getChangeSets() {
+        return new AbstractList<ChangeSet>() {
+            @Override
+            public ChangeSet get(int index) {
+                return new ChangeSet(Integer.toString(ids[index]), getDate(index), users[index], messages[index]);
+            }
+
+            @Override
+            public int size() {
+                return ids.length;
+            }
+        };
+    }
+
+    /**
+     * @return the highest changeset number in the history; 0 if it is empty.
+     */
+    public int getHighestChangeset() {
+        return highestChangeset;
+    }
+
+    /**
+     * Returns a new history with the newer changesets placed in front of the ones
+     * already known. Changesets that are already part of this history are skipped.
+     * @param newer newest first list of changesets retrieved after this history.
+     * @param maxItems the maximum number of changesets to keep, the oldest are dropped; 0 for no limit.
+     */
+    public ChangeSetHistory merge(List<ChangeSet> newer, int maxItems) {
+        int added = 0;
+        for (ChangeSet changeset : newer) {
+            if (getNumber(changeset) > highestChangeset) {
+                added++;
+            }
+        }
+        if (added == 0) {
+            return this;
+        }
+        int size = added + ids.length;
+        if (maxItems > 0 && size > maxItems) {
+            size = maxItems;
+        }
+        Columns merged = new Columns(size);
+        List<ChangeSet> newest = new ArrayList<ChangeSet>(added);
+        for (ChangeSet changeset : newer) {
+            if (getNumber(changeset) > highestChangeset) {
+                newest.add(changeset);
+            }
+        }
+        int i = Math.min(added, size);
+        merged.add(newest, 0, i);
+        System.arraycopy(ids, 0, merged.ids, i, size - i);
+        System.arraycopy(dates, 0, merged.dates, i, size - i);
+        System.arraycopy(users, 0, merged.users, i, size - i);
+        System.arraycopy(messages, 0, merged.messages, i, size - i);
+        return new ChangeSetHistory(merged);
+    }
+
+    /**
+     * Returns the changesets of this newest first history up to the first one created before the cutoff.
+     * @param cutoff the oldest date to keep; null to keep all changesets
+     */
+    public ChangeSetHistory since(Date cutoff) {
+        if (cutoff == null) {
+            return this;
+        }
+        int size = 0;
+        while (size < dates.length && (dates[size] == NO_DATE || dates[size] >= cutoff.getTime())) {
+            size++;
+        }
+        if (size == dates.length) {
+            return this;
+        }
+        Columns kept = new Columns(size);
+        System.arraycopy(ids, 0, kept.ids, 0, size);
+        System.arraycopy(dates, 0, kept.dates, 0, size);
+        System.arraycopy(users, 0, kept.users, 0, size);
+        System.arraycopy(messages, 0, kept.messages, 0, size);
+        return new ChangeSetHistory(kept);
+    }
+
+    /**
+     * Creates a history from columns read from storage. The arrays are not copied.
+     */
+    public static ChangeSetHistory fromColumns(int[] ids, long[] dates, String[] users, String[] messages) {
+        Columns columns = new Columns(ids, dates, users, messages);
+        Map<String, String> userPool = new HashMap<String, String>();
+        for (int i = 0; i < users.length; i++) {
+            users[i] = pool(userPool, users[i]);
+            messages[i] = truncate(messages[i]);
+        }
+        return new ChangeSetHistory(columns);
+    }
+
+    public static int getNumber(ChangeSet changeset) {
+        try {
+            return Integer.parseInt(changeset.getVersion().trim());
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    private static String pool(Map<String, String> pool, String value) {
+        if (value == null) {
+            return null;
+        }
+        String pooled = pool.get(value);
+        if (pooled == null) {
+            pooled = value;
+            pool.put(value, value);
+        }
+        return pooled;
+    }
+
+    private static String truncate(String message) {
+        if (message == null || message.length() <= MAX_MESSAGE_LENGTH) {
+            return message;
+        }
+        return new String(message.substring(0, MAX_MESSAGE_LENGTH));
+    }
+
+    private static final class Columns {
+        private final int[] ids;
+        private final long[] dates;
+        private final String[] users;
+        private final String[] messages;
+        private final Map<String, String> userPool = new HashMap<String, String>();
+
+        Columns(int size) {
+            this(new int[size], new long[size], new String[size], new String[size]);
+        }
+
+        Columns(int[] ids, long[] dates, String[] users, String[] messages) {
+            this.ids = ids;
+            this.dates = dates;
+            this.users = users;
+            this.messages = messages;
+        }
+
+        /**
+         * Fills the first count rows with the first count changesets.
+         */
+        Columns add(List<ChangeSet> changesets, int offset, int count) {
+            int i = offset;
+            for (ChangeSet changeset : changesets) {
+                if (i >= offset + count) {
+                    break;
+                }
+                ids[i] = getNumber(changeset);
+                dates[i] = changeset.getDate() == null ? NO_DATE : changeset.getDate().getTime();
+                users[i] = pool(userPool, changeset.getUser());
+                messages[i] = truncate(changeset.getMsg());
+                i++;
+            }
+            return this;
+        }
+    }
+}
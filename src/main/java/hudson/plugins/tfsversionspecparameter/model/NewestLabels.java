@@ -0,0 +1,61 @@
+package hudson.plugins.tfsversionspecparameter.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the newest labels of a stream of labels that arrive in no particular
+ * order, such as the output of tf labels, which is ordered by name. Only the
+ * labels kept so far are held, in a heap with the oldest on top, so a limited
+ * list costs the same memory however many labels there are.
+ */
+public final class NewestLabels {
+
+    /** Orders labels oldest first; labels without a date count as the oldest. */
+    private static final Comparator<TFSLabel> OLDEST_FIRST = new Comparator<TFSLabel>() {
+        public int compare(TFSLabel a, TFSLabel b) {
+            if (a.getDate() == null || b.getDate() == null) {
+                return a.getDate() == null ? (b.getDate() == null ? 0 : -1) : 1;
+            }
+            return a.getDate().compareTo(b.getDate());
+        }
+    };
+
+    private final int maxItems;
+    private final PriorityQueue<TFSLabel> heap;
+    private final List<TFSLabel> all;
+
+    /**
+     * @param maxItems the number of labels to keep; 0 for all
+     */
+    public NewestLabels(int maxItems) {
+        this.maxItems = maxItems;
+        this.heap = maxItems > 0 ? new PriorityQueue<TFSLabel>(Math.min(maxItems, 1024) + 1, OLDEST_FIRST) : null;
+        this.all = maxItems > 0 ? null : new ArrayList<TFSLabel>();
+    }
+
+    public void add(TFSLabel label) {
+        if (heap == null) {
+            all.add(label);
+            return;
+        }
+        if (heap.size() < maxItems) {
+            heap.add(label);
+        } else if (OLDEST_FIRST.compare(label, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(label);
+        }
+    }
+
+    /**
+     * @return the labels kept, newest first.
+     */
+    public List<TFSLabel> toList() {
+        List<TFSLabel> labels = heap == null ? new ArrayList<TFSLabel>(all) : new ArrayList<TFSLabel>(heap);
+        Collections.sort(labels, Collections.reverseOrder(OLDEST_FIRST));
+        return labels;
+    }
+}
@@ -8,13 +8,22 @@ public class TFSLabel {
     private String projectScope;
     private String owner;
     private Date date;
+    private int changeset;
     
     public TFSLabel() {
         this("", "", null, "", "");
     }
     
     public TFSLabel(String label, String projectScope, Date date, String owner, String comment) {
+        this(label, projectScope, date, owner, comment, 0);
+    }
+    
+    /**
+     * @param changeset the highest changeset of the items of the label; 0 if unknown
+     */
+    public TFSLabel(String label, String projectScope, Date date, String owner, String comment, int changeset) {
         this.label = label;
+        this.changeset = changeset;
         this.date = date;
         this.comment = comment;
         this.owner = owner;
@@ -41,4 +50,11 @@ public class TFSLabel {
         return label;
     }
     
+    /**
+     * @return the highest changeset of the items of the label, which the label resolves to; 0 if unknown.
+     */
+    public int getChangeset() {
+        return changeset;
+    }
+    
 }
@@ -0,0 +1,153 @@
+package hudson.plugins.tfsversionspecparameter.model;
+
+import hudson.Util;
+import hudson.plugins.tfs.model.ChangeSet;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Restricts the changesets and labels of a version list by label name, owner
+ * and age. Where tf supports it the filter is passed as arguments; the label
+ * name and the age are also checked while the output is parsed.
+ */
+public final class VersionListFilter {
+
+    public static final VersionListFilter NONE = new VersionListFilter(null, false, null, 0);
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private final String name;
+    private final boolean regex;
+    private final String owner;
+    private final int maxAge;
+    private final Pattern namePattern;
+
+    /**
+     * @param name glob or regular expression the label names must match; empty to match all
+     * @param regex true if name is a regular expression, false if it is a glob with * and ?
+     * @param owner the user that must have created the changesets or labels; empty for any user
+     * @param maxAge the maximum age in days of the changesets and labels; 0 for any age
+     * @throws PatternSyntaxException if name is not a valid regular expression
+     */
+    public VersionListFilter(String name, boolean regex, String owner, int maxAge) {
+        this.name = Util.fixEmptyAndTrim(name);
+        this.regex = regex && this.name != null;
+        this.owner = Util.fixEmptyAndTrim(owner);
+        this.maxAge = Math.max(0, maxAge);
+        if (this.name == null) {
+            namePattern = null;
+        } else {
+            namePattern = Pattern.compile(this.regex ? this.name : globToRegex(this.name), Pattern.CASE_INSENSITIVE);
+        }
+    }
+
+    public boolean isEmpty() {
+        return name == null && owner == null && maxAge == 0;
+    }
+
+    /**
+     * @return the label name argument for tf labels; the glob, or * if the name is a regular expression.
+     */
+    public String getLabelArgument() {
+        return name == null || regex ? "*" : name;
+    }
+
+    /**
+     * The owner is only applied by the server, as an argument to tf or the REST API.
+     * What tf prints as the user of a changeset or label may be a display name, lack
+     * the domain or be cut off to fit its column, so it cannot be compared reliably.
+     * @return the owner to pass to tf; null for any user.
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return the oldest date a changeset or label may have at the given time; null if there is no limit.
+     */
+    public Date getCutoff(long now) {
+        return maxAge == 0 ? null : new Date(now - maxAge * DAY);
+    }
+
+    /**
+     * Formats the cutoff as a tf date version spec, D followed by the date in UTC.
+     * @return the version spec; null if there is no limit.
+     */
+    public String getCutoffVersionSpec(long now) {
+        Date cutoff = getCutoff(now);
+        if (cutoff == null) {
+            return null;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ENGLISH);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return "D" + format.format(cutoff);
+    }
+
+    /**
+     * Returns true if the label has a matching name and is not older than the cutoff.
+     * The owner is not checked, see {@link #getOwner()}, and a label whose date is
+     * unknown is kept since it is not known to be too old.
+     */
+    public boolean matches(TFSLabel label, Date cutoff) {
+        if (namePattern != null && (label.getLabel() == null || !namePattern.matcher(label.getLabel()).matches())) {
+            return false;
+        }
+        return isRecent(label.getDate(), cutoff);
+    }
+
+    /**
+     * Returns true if the changeset is not older than the cutoff, or its date is unknown.
+     */
+    public boolean matches(ChangeSet changeset, Date cutoff) {
+        return isRecent(changeset.getDate(), cutoff);
+    }
+
+    private static boolean isRecent(Date date, Date cutoff) {
+        return cutoff == null || date == null || !date.before(cutoff);
+    }
+
+    /**
+     * Returns a description of the filter, which identifies it in cache keys.
+     */
+    @Override
+    public String toString() {
+        if (isEmpty()) {
+            return "";
+        }
+        return (regex ? "regex:" : "name:") + Util.fixNull(name) + ";owner:" + Util.fixNull(owner) + ";maxAge:" + maxAge;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof VersionListFilter && toString().equals(obj.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    private static String globToRegex(String glob) {
+        StringBuilder pattern = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    pattern.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                pattern.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            pattern.append(Pattern.quote(literal.toString()));
+        }
+        return pattern.toString();
+    }
+}
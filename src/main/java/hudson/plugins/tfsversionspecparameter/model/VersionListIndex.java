@@ -0,0 +1,288 @@
+package hudson.plugins.tfsversionspecparameter.model;
+
+import hudson.Util;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable search index over the rows of a version list, matching the
+ * value, display text and owner of each row by token prefix.
+ * <p>
+ * Entries are numbered from the oldest row, so the rows a refresh adds at the
+ * top of the list get new numbers and an index built from the previous index
+ * of the same list only appends them to the postings of their tokens. Rows
+ * dropped from the bottom of the list keep their numbers in the postings
+ * below {@link #base} and are skipped, until they outnumber the rows in the
+ * list and the index is built again.
+ */
+public final class VersionListIndex {
+
+    /** Columns of the entries, oldest first: the entry of row r is at size - 1 - r. */
+    private final String[] values;
+    private final long[] times;
+    private final String[] comments;
+    private final String[][] entryTokens;
+    /** Number of the oldest entry; lower numbers belong to rows dropped from the list. */
+    private final int base;
+    /** Distinct tokens in ascending order. */
+    private final String[] tokens;
+    /** Numbers of the entries containing each token, in ascending order. */
+    private final int[][] postings;
+
+    private VersionListIndex(String[] values, long[] times, String[] comments, String[][] entryTokens, int base,
+            String[] tokens, int[][] postings) {
+        this.values = values;
+        this.times = times;
+        this.comments = comments;
+        this.entryTokens = entryTokens;
+        this.base = base;
+        this.tokens = tokens;
+        this.postings = postings;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Returns up to max rows of which every word of the query is a prefix of some
+     * token. Rows whose value starts with the query come first, the rest keep the
+     * order of the list.
+     */
+    public int[] search(String query, int max) {
+        String[] terms = tokenize(query == null ? "" : query);
+        if (terms.length == 0 || max <= 0) {
+            return new int[0];
+        }
+
+        int size = values.length;
+        int newest = base + size - 1;
+        boolean[] matches = null;
+        for (String term : terms) {
+            boolean[] termMatches = new boolean[size];
+            int t = Arrays.binarySearch(tokens, term);
+            if (t < 0) {
+                t = -t - 1;
+            }
+            for (; t < tokens.length && tokens[t].startsWith(term); t++) {
+                for (int entry : postings[t]) {
+                    if (entry < base) {
+                        continue;
+                    }
+                    int row = newest - entry;
+                    if (matches == null || matches[row]) {
+                        termMatches[row] = true;
+                    }
+                }
+            }
+            matches = termMatches;
+        }
+
+        String prefix = query.trim().toLowerCase(Locale.ENGLISH);
+        int[] result = new int[Math.min(max, size)];
+        int count = 0;
+        for (int i = 0; i < size && count < result.length; i++) {
+            if (matches[i] && values[size - 1 - i].toLowerCase(Locale.ENGLISH).startsWith(prefix)) {
+                result[count++] = i;
+                matches[i] = false;
+            }
+        }
+        for (int i = 0; i < size && count < result.length; i++) {
+            if (matches[i]) {
+                result[count++] = i;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Splits text into lower case tokens at every character that is neither a letter nor a digit.
+     */
+    static String[] tokenize(String text) {
+        List<String> result = new ArrayList<String>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean part = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (part && start < 0) {
+                start = i;
+            } else if (!part && start >= 0) {
+                String token = text.substring(start, i).toLowerCase(Locale.ENGLISH);
+                if (!result.contains(token)) {
+                    result.add(token);
+                }
+                start = -1;
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Builds the index of the rows. Only the text of rows that are not in the previous
+     * index is formatted.
+     * @param previous the index of the previous version of the list, whose tokens are
+     *        reused for rows with the same value, date and comment; may be null
+     */
+    public static VersionListIndex build(VersionListRows rows, VersionListIndex previous) {
+        if (previous != null && previous.size() > 0) {
+            VersionListIndex appended = previous.append(rows);
+            if (appended != null) {
+                return appended;
+            }
+        }
+        return rebuild(rows, previous);
+    }
+
+    /**
+     * Builds the index of rows that are the rows of this index, possibly without some
+     * of the oldest, below new rows, by appending the new rows to the postings.
+     * @return the index; null if the rows are not of that form or too many dropped rows
+     *         would be left in the postings.
+     */
+    private VersionListIndex append(VersionListRows rows) {
+        int size = rows.size();
+        int newest = values.length - 1;
+        int added = 0;
+        while (added < size && !isSameEntry(rows, added, newest)) {
+            added++;
+        }
+        if (added == size || size - added > values.length) {
+            // older rows below the rows of this index would need lower numbers
+            return null;
+        }
+        int kept = size - added;
+        for (int i = 1; i < kept; i++) {
+            if (!isSameEntry(rows, added + i, newest - i)) {
+                return null;
+            }
+        }
+        int dropped = values.length - kept;
+        int newBase = base + dropped;
+        if (newBase > size) {
+            return null;
+        }
+
+        String[] newValues = new String[size];
+        long[] newTimes = new long[size];
+        String[] newComments = new String[size];
+        String[][] newEntryTokens = new String[size][];
+        System.arraycopy(values, dropped, newValues, 0, kept);
+        System.arraycopy(times, dropped, newTimes, 0, kept);
+        System.arraycopy(comments, dropped, newComments, 0, kept);
+        System.arraycopy(entryTokens, dropped, newEntryTokens, 0, kept);
+        TreeMap<String, List<Integer>> addedPostings = new TreeMap<String, List<Integer>>();
+        for (int entry = kept; entry < size; entry++) {
+            readEntry(rows, size - 1 - entry, entry, newValues, newTimes, newComments, newEntryTokens);
+            addPostings(addedPostings, newEntryTokens[entry], newBase + entry);
+        }
+
+        // every new entry number is above the old ones, so appending keeps the postings ascending
+        List<String> mergedTokens = new ArrayList<String>(tokens.length + addedPostings.size());
+        List<int[]> mergedPostings = new ArrayList<int[]>(tokens.length + addedPostings.size());
+        Iterator<Map.Entry<String, List<Integer>>> newTokens = addedPostings.entrySet().iterator();
+        Map.Entry<String, List<Integer>> next = newTokens.hasNext() ? newTokens.next() : null;
+        int t = 0;
+        while (t < tokens.length || next != null) {
+            int order = t == tokens.length ? 1 : next == null ? -1 : tokens[t].compareTo(next.getKey());
+            if (order < 0) {
+                mergedTokens.add(tokens[t]);
+                mergedPostings.add(postings[t++]);
+                continue;
+            }
+            int[] appended = toArray(order == 0 ? postings[t] : new int[0], next.getValue());
+            mergedTokens.add(next.getKey());
+            mergedPostings.add(appended);
+            if (order == 0) {
+                t++;
+            }
+            next = newTokens.hasNext() ? newTokens.next() : null;
+        }
+        return new VersionListIndex(newValues, newTimes, newComments, newEntryTokens, newBase,
+                mergedTokens.toArray(new String[mergedTokens.size()]), mergedPostings.toArray(new int[mergedPostings.size()][]));
+    }
+
+    /**
+     * Builds the index of the rows from scratch, reusing the tokens of rows of the previous index.
+     */
+    private static VersionListIndex rebuild(VersionListRows rows, VersionListIndex previous) {
+        Map<String, Integer> previousEntries = new HashMap<String, Integer>();
+        if (previous != null) {
+            for (int i = 0; i < previous.values.length; i++) {
+                previousEntries.put(previous.values[i], i);
+            }
+        }
+        int size = rows.size();
+        String[] values = new String[size];
+        long[] times = new long[size];
+        String[] comments = new String[size];
+        String[][] entryTokens = new String[size][];
+        TreeMap<String, List<Integer>> byToken = new TreeMap<String, List<Integer>>();
+        for (int entry = 0; entry < size; entry++) {
+            int row = size - 1 - entry;
+            Integer reused = previous == null ? null : previousEntries.get(rows.getValue(row));
+            if (reused != null && previous.isSameEntry(rows, row, reused)) {
+                values[entry] = previous.values[reused];
+                times[entry] = previous.times[reused];
+                comments[entry] = previous.comments[reused];
+                entryTokens[entry] = previous.entryTokens[reused];
+            } else {
+                readEntry(rows, row, entry, values, times, comments, entryTokens);
+            }
+            addPostings(byToken, entryTokens[entry], entry);
+        }
+        String[] tokens = byToken.keySet().toArray(new String[byToken.size()]);
+        int[][] postings = new int[tokens.length][];
+        int t = 0;
+        for (List<Integer> entries : byToken.values()) {
+            postings[t++] = toArray(new int[0], entries);
+        }
+        return new VersionListIndex(values, times, comments, entryTokens, 0, tokens, postings);
+    }
+
+    /**
+     * Returns true if the row has the value, date and comment of the entry. The
+     * display text is built from these, so its tokens can be reused.
+     */
+    private boolean isSameEntry(VersionListRows rows, int row, int entry) {
+        return rows.getTime(row) == times[entry]
+                && Util.fixNull(rows.getComment(row)).equals(comments[entry])
+                && rows.getValue(row).equals(values[entry]);
+    }
+
+    private static void readEntry(VersionListRows rows, int row, int entry,
+            String[] values, long[] times, String[] comments, String[][] entryTokens) {
+        String value = rows.getValue(row);
+        String owner = rows.getOwner(row);
+        values[entry] = value;
+        times[entry] = rows.getTime(row);
+        comments[entry] = Util.fixNull(rows.getComment(row));
+        entryTokens[entry] = tokenize(value + " " + rows.getText(row) + " " + (owner == null ? "" : owner));
+    }
+
+    private static void addPostings(TreeMap<String, List<Integer>> byToken, String[] entryTokens, int entry) {
+        for (String token : entryTokens) {
+            List<Integer> entries = byToken.get(token);
+            if (entries == null) {
+                entries = new ArrayList<Integer>();
+                byToken.put(token, entries);
+            }
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * Returns the postings followed by the given entries.
+     */
+    private static int[] toArray(int[] postings, List<Integer> entries) {
+        int[] array = Arrays.copyOf(postings, postings.length + entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            array[postings.length + i] = entries.get(i);
+        }
+        return array;
+    }
+}
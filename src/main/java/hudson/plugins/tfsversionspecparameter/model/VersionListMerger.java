@@ -0,0 +1,113 @@
+package hudson.plugins.tfsversionspecparameter.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Merges the changesets and labels retrieved for several server paths into one
+ * list, newest first, without duplicates. A single list is returned as is.
+ */
+public final class VersionListMerger {
+
+    private VersionListMerger() {
+    }
+
+    /**
+     * Merges newest first histories in one pass, taking the newest remaining changeset
+     * of all histories each time. A changeset listed for more than one path is kept once.
+     * @param maxItems the maximum number of changesets to keep; 0 for no limit
+     */
+    public static ChangeSetHistory mergeHistories(List<ChangeSetHistory> histories, int maxItems) {
+        if (histories.size() == 1) {
+            return histories.get(0);
+        }
+        int total = 0;
+        for (ChangeSetHistory history : histories) {
+            total += history.size();
+        }
+        if (maxItems > 0) {
+            total = Math.min(total, maxItems);
+        }
+        int[] ids = new int[total];
+        long[] dates = new long[total];
+        String[] users = new String[total];
+        String[] messages = new String[total];
+        int[] positions = new int[histories.size()];
+        int size = 0;
+        while (size < total) {
+            int newest = -1;
+            for (int i = 0; i < positions.length; i++) {
+                ChangeSetHistory history = histories.get(i);
+                if (positions[i] < history.size() && (newest < 0 || isNewer(history, positions[i], histories.get(newest), positions[newest]))) {
+                    newest = i;
+                }
+            }
+            if (newest < 0) {
+                break;
+            }
+            ChangeSetHistory history = histories.get(newest);
+            int row = positions[newest]++;
+            // equal changesets are adjacent in the merged order, so only the last one has to be compared
+            if (size > 0 && ids[size - 1] == history.getId(row) && dates[size - 1] == history.getTime(row)) {
+                continue;
+            }
+            ids[size] = history.getId(row);
+            dates[size] = history.getTime(row);
+            users[size] = history.getUser(row);
+            messages[size] = history.getMessage(row);
+            size++;
+        }
+        if (size < total) {
+            ids = Arrays.copyOf(ids, size);
+            dates = Arrays.copyOf(dates, size);
+            users = Arrays.copyOf(users, size);
+            messages = Arrays.copyOf(messages, size);
+        }
+        return ChangeSetHistory.fromColumns(ids, dates, users, messages);
+    }
+
+    private static boolean isNewer(ChangeSetHistory a, int rowA, ChangeSetHistory b, int rowB) {
+        long timeA = a.getTime(rowA);
+        long timeB = b.getTime(rowB);
+        return timeA != timeB ? timeA > timeB : a.getId(rowA) > b.getId(rowB);
+    }
+
+    /**
+     * Merges label lists newest first. A label with the same name and scope listed for
+     * more than one path is kept once.
+     * @param maxItems the maximum number of labels to keep; 0 for no limit
+     */
+    public static List<TFSLabel> mergeLabels(List<List<TFSLabel>> labelLists, int maxItems) {
+        if (labelLists.size() == 1) {
+            return labelLists.get(0);
+        }
+        List<TFSLabel> merged = new ArrayList<TFSLabel>();
+        Set<String> seen = new HashSet<String>();
+        for (List<TFSLabel> labels : labelLists) {
+            for (TFSLabel label : labels) {
+                if (seen.add((label.getLabel() + "@" + label.getProjectScope()).toLowerCase())) {
+                    merged.add(label);
+                }
+            }
+        }
+        Collections.sort(merged, NEWEST_FIRST);
+        if (maxItems > 0 && merged.size() > maxItems) {
+            merged = new ArrayList<TFSLabel>(merged.subList(0, maxItems));
+        }
+        return Collections.unmodifiableList(merged);
+    }
+
+    private static final Comparator<TFSLabel> NEWEST_FIRST = new Comparator<TFSLabel>() {
+        public int compare(TFSLabel a, TFSLabel b) {
+            if (a.getDate() == null || b.getDate() == null) {
+                return a.getDate() == null ? (b.getDate() == null ? 0 : 1) : -1;
+            }
+            return b.getDate().compareTo(a.getDate());
+        }
+    };
+}
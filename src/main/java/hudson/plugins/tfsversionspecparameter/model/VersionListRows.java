@@ -0,0 +1,45 @@
+package hudson.plugins.tfsversionspecparameter.model;
+
+/**
+ * Read only, ordered rows of a version list. The display text of a row is
+ * built when it is requested, so only the rows actually shown are formatted.
+ */
+public interface VersionListRows {
+
+    int size();
+
+    /**
+     * @return the value submitted when the row is selected.
+     */
+    String getValue(int row);
+
+    /**
+     * @return the text shown for the row.
+     */
+    String getText(int row);
+
+    /**
+     * @return the comment of the changeset or label of the row; may be null.
+     */
+    String getComment(int row);
+
+    /**
+     * @return the user that created the changeset or label of the row; may be null.
+     */
+    String getOwner(int row);
+
+    /**
+     * @return the changeset the row resolves to; 0 if unknown.
+     */
+    int getChangeset(int row);
+
+    /**
+     * @return the date of the changeset or label of the row in milliseconds; {@link Long#MIN_VALUE} if unknown.
+     */
+    long getTime(int row);
+
+    /**
+     * @return the row with the given value; -1 if there is none.
+     */
+    int indexOf(String value);
+}
@@ -0,0 +1,204 @@
+package hudson.plugins.tfsversionspecparameter.model;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable list of the rows shown for a parameter, mapping the value of
+ * each changeset or label to its display text, together with the outcome of
+ * the retrieval it was built from.
+ * <p>
+ * A new snapshot is built for every refresh and published by replacing the
+ * reference to the old one, so readers always see a complete list. Display
+ * texts are formatted for the rows that are requested only, and the search
+ * index is built on the first search.
+ */
+public final class VersionListSnapshot {
+
+    public static final VersionListSnapshot EMPTY = new VersionListSnapshot(new Object[0], EmptyRows.INSTANCE, null, "", false);
+
+    private final Object[] sources;
+    private final VersionListRows rows;
+    private final String errorMessage;
+    private final boolean stale;
+    /** Index of the previous snapshot whose tokens are reused; cleared once the index is built. */
+    private VersionListIndex previousIndex;
+    private volatile VersionListIndex index;
+
+    /**
+     * @param sources the cached lists the rows were built from
+     * @param rows the rows in display order
+     * @param previous the snapshot this one replaces, whose search index is reused if it was built; may be null
+     * @param stale true if the cached list could not be refreshed
+     */
+    public VersionListSnapshot(Object[] sources, VersionListRows rows, VersionListSnapshot previous, boolean stale) {
+        this(sources, rows, previous == null ? null : previous.index, "", stale);
+    }
+
+    private VersionListSnapshot(Object[] sources, VersionListRows rows, VersionListIndex previousIndex, String errorMessage, boolean stale) {
+        this.sources = sources.clone();
+        this.rows = rows;
+        this.previousIndex = previousIndex;
+        this.errorMessage = errorMessage;
+        this.stale = stale;
+    }
+
+    public static VersionListSnapshot error(String errorMessage) {
+        return new VersionListSnapshot(new Object[0], EmptyRows.INSTANCE, null, errorMessage == null ? "" : errorMessage, false);
+    }
+
+    /**
+     * @return true if this snapshot was built from the given cached lists, so it does not need to be rebuilt.
+     */
+    public boolean isBuiltFrom(boolean stale, Object... sources) {
+        if (this.sources.length == 0 || this.sources.length != sources.length || this.stale != stale) {
+            return false;
+        }
+        for (int i = 0; i < sources.length; i++) {
+            if (this.sources[i] != sources[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns all entries, formatting the text of every row. Use {@link #getPage(int, int)} where possible.
+     */
+    public Map<String, String> getEntries() {
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        for (int i = 0; i < rows.size(); i++) {
+            entries.put(rows.getValue(i), rows.getText(i));
+        }
+        return Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * Returns count entries starting at offset.
+     */
+    public List<Map.Entry<String, String>> getPage(int offset, int count) {
+        final int from = Math.max(0, Math.min(offset, rows.size()));
+        final int to = Math.max(from, Math.min(from + count, rows.size()));
+        return new AbstractList<Map.Entry<String, String>>() {
+            @Override
+            public Map.Entry<String, String> get(int index) {
+                return entry(from + index);
+            }
+
+            @Override
+            public int size() {
+                return to - from;
+            }
+        };
+    }
+
+    /**
+     * Returns up to max entries matching the query, see {@link VersionListIndex#search(String, int)}.
+     */
+    public Map<String, String> search(String query, int max) {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (int row : getIndex().search(query, max)) {
+            result.put(rows.getValue(row), rows.getText(row));
+        }
+        return result;
+    }
+
+    public VersionListIndex getIndex() {
+        VersionListIndex built = index;
+        if (built == null) {
+            synchronized (this) {
+                built = index;
+                if (built == null) {
+                    built = VersionListIndex.build(rows, previousIndex);
+                    previousIndex = null;
+                    index = built;
+                }
+            }
+        }
+        return built;
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    public boolean contains(String value) {
+        return rows.indexOf(value) >= 0;
+    }
+
+    /**
+     * @return the row with the given value; -1 if there is none.
+     */
+    public int indexOf(String value) {
+        return rows.indexOf(value);
+    }
+
+    /**
+     * @return the changeset the row resolves to; 0 if unknown.
+     */
+    public int getChangeset(int row) {
+        return rows.getChangeset(row);
+    }
+
+    /**
+     * @return the date of the changeset or label of the row in milliseconds; {@link Long#MIN_VALUE} if unknown.
+     */
+    public long getTime(int row) {
+        return rows.getTime(row);
+    }
+
+    /**
+     * @return the error that prevented the list from being retrieved; empty if there was none.
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    private Map.Entry<String, String> entry(int row) {
+        return new AbstractMap.SimpleImmutableEntry<String, String>(rows.getValue(row), rows.getText(row));
+    }
+
+    private static final class EmptyRows implements VersionListRows {
+        static final EmptyRows INSTANCE = new EmptyRows();
+
+        public int size() {
+            return 0;
+        }
+
+        public String getValue(int row) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        public String getText(int row) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        public String getComment(int row) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        public String getOwner(int row) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        public int getChangeset(int row) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        public long getTime(int row) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        public int indexOf(String value) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package hudson.plugins.tfsversionspecparameter.model;
+
+import hudson.Util;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A server path whose changesets and labels are listed, optionally on another
+ * collection than the one configured in the job.
+ */
+public final class VersionListSource {
+
+    private final String serverUrl;
+    private final String projectPath;
+
+    /**
+     * @param serverUrl the url of the collection; null for the one configured in the job
+     * @param projectPath the server path, starting with $/
+     */
+    public VersionListSource(String serverUrl, String projectPath) {
+        this.serverUrl = Util.fixEmptyAndTrim(serverUrl);
+        this.projectPath = projectPath.trim();
+    }
+
+    /**
+     * Parses one source per line. A line is a server path, optionally preceded by the
+     * url of its collection, e.g. <tt>http://tfs:8080/tfs/Other $/Product/Main</tt>.
+     * Empty lines and lines without a server path are ignored.
+     */
+    public static List<VersionListSource> parse(String lines) {
+        if (lines == null) {
+            return Collections.emptyList();
+        }
+        List<VersionListSource> sources = new ArrayList<VersionListSource>();
+        for (String line : lines.split("[\\r\\n]+")) {
+            int path = line.indexOf("$/");
+            if (path >= 0) {
+                sources.add(new VersionListSource(line.substring(0, path), line.substring(path)));
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * @return the url of the collection; null for the one configured in the job.
+     */
+    public String getServerUrl() {
+        return serverUrl;
+    }
+
+    public String getProjectPath() {
+        return projectPath;
+    }
+
+    /**
+     * Returns true if the path is on the given collection, either because no other
+     * collection is named or the url names the same one.
+     */
+    public boolean isOnCollection(String collectionUrl) {
+        return serverUrl == null || normalize(serverUrl).equals(normalize(collectionUrl));
+    }
+
+    private static String normalize(String url) {
+        String value = Util.fixNull(url).trim().toLowerCase();
+        return value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+    }
+
+    @Override
+    public String toString() {
+        return serverUrl == null ? projectPath : serverUrl + " " + projectPath;
+    }
+}
@@ -0,0 +1,60 @@
+package hudson.plugins.tfsversionspecparameter.stats;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader over the output of a retrieval that records the time until the first
+ * characters arrive and, when closed, the number of characters read.
+ */
+public final class MeteredReader extends FilterReader {
+
+    private final VersionListStats stats;
+    private final long started;
+    private long count;
+    private boolean firstRead = true;
+    private boolean closed;
+
+    /**
+     * @param started the {@link System#nanoTime()} the retrieval was started at
+     */
+    public MeteredReader(Reader in, VersionListStats stats, long started) {
+        super(in);
+        this.stats = stats;
+        this.started = started;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int c = super.read();
+        count(c < 0 ? -1 : 1);
+        return c;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int n = super.read(cbuf, off, len);
+        count(n);
+        return n;
+    }
+
+    private void count(int n) {
+        if (firstRead) {
+            firstRead = false;
+            stats.getFirstByte().record(System.nanoTime() - started);
+        }
+        if (n > 0) {
+            count += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            stats.addOutputChars(count);
+        }
+        super.close();
+    }
+}
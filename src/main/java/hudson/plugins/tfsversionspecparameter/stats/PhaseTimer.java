@@ -0,0 +1,39 @@
+package hudson.plugins.tfsversionspecparameter.stats;
+
+/**
+ * Accumulates the durations of one phase of retrieving a version list.
+ */
+public final class PhaseTimer {
+
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+    private long lastNanos;
+
+    public synchronized void record(long nanos) {
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        lastNanos = nanos;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getTotalMillis() {
+        return totalNanos / 1000000L;
+    }
+
+    public synchronized long getAverageMillis() {
+        return count == 0 ? 0 : totalNanos / count / 1000000L;
+    }
+
+    public synchronized long getMaxMillis() {
+        return maxNanos / 1000000L;
+    }
+
+    public synchronized long getLastMillis() {
+        return lastNanos / 1000000L;
+    }
+}
@@ -0,0 +1,65 @@
+package hudson.plugins.tfsversionspecparameter.stats;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the {@link VersionListStats} of every repository version lists
+ * were retrieved for. Each one is registered as an MBean named
+ * {@code hudson.plugins.tfsversionspecparameter:type=VersionListStats,repository=...}.
+ */
+public final class VersionListStatistics {
+
+    private static final Logger LOGGER = Logger.getLogger(VersionListStatistics.class.getName());
+
+    private static final String DOMAIN = "hudson.plugins.tfsversionspecparameter";
+
+    private static final VersionListStatistics INSTANCE = new VersionListStatistics();
+
+    private final ConcurrentMap<String, VersionListStats> stats = new ConcurrentHashMap<String, VersionListStats>();
+
+    public static VersionListStatistics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the statistics of the repository, creating them on first use.
+     */
+    public VersionListStats get(String serverUrl, String projectPath) {
+        String repository = normalize(serverUrl) + ":" + normalize(projectPath);
+        VersionListStats repositoryStats = stats.get(repository);
+        if (repositoryStats == null) {
+            VersionListStats created = new VersionListStats(repository);
+            repositoryStats = stats.putIfAbsent(repository, created);
+            if (repositoryStats == null) {
+                repositoryStats = created;
+                register(created);
+            }
+        }
+        return repositoryStats;
+    }
+
+    public List<VersionListStats> getAll() {
+        return new ArrayList<VersionListStats>(stats.values());
+    }
+
+    private static void register(VersionListStats repositoryStats) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=VersionListStats,repository=" + ObjectName.quote(repositoryStats.getRepository()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(repositoryStats, name);
+        } catch (JMException ex) {
+            LOGGER.log(Level.FINE, "Unable to register the MBean of " + repositoryStats.getRepository(), ex);
+        }
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase();
+    }
+}
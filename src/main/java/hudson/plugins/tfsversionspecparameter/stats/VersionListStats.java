@@ -0,0 +1,151 @@
+package hudson.plugins.tfsversionspecparameter.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings and counters of the version lists retrieved for one repository,
+ * identified by server url and project path.
+ * <p>
+ * A retrieval is split into the phases spawn (starting the tf process or
+ * sending the REST request), first byte (until the first output can be read),
+ * parse (reading the output into changesets or labels) and format (building
+ * the entries shown in the select box).
+ */
+public final class VersionListStats implements VersionListStatsMBean {
+
+    private final String repository;
+    private final PhaseTimer spawn = new PhaseTimer();
+    private final PhaseTimer firstByte = new PhaseTimer();
+    private final PhaseTimer parse = new PhaseTimer();
+    private final PhaseTimer format = new PhaseTimer();
+    private final AtomicLong outputChars = new AtomicLong();
+    private final AtomicLong entriesKept = new AtomicLong();
+    private final AtomicLong entriesDiscarded = new AtomicLong();
+    private final AtomicLong entriesFiltered = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    VersionListStats(String repository) {
+        this.repository = repository;
+    }
+
+    public String getRepository() {
+        return repository;
+    }
+
+    public PhaseTimer getSpawn() {
+        return spawn;
+    }
+
+    public PhaseTimer getFirstByte() {
+        return firstByte;
+    }
+
+    public PhaseTimer getParse() {
+        return parse;
+    }
+
+    public PhaseTimer getFormat() {
+        return format;
+    }
+
+    public void addOutputChars(long bytes) {
+        outputChars.addAndGet(bytes);
+    }
+
+    /**
+     * @param kept the number of changesets or labels returned
+     * @param discarded the number of labels skipped because they are outside of the project path
+     * @param filtered the number of changesets or labels skipped because they do not match the
+     *        name filter, owner or maximum age of the parameter
+     */
+    public void addEntries(long kept, long discarded, long filtered) {
+        entriesKept.addAndGet(kept);
+        entriesDiscarded.addAndGet(discarded);
+        entriesFiltered.addAndGet(filtered);
+    }
+
+    public void recordCacheHit() {
+        cacheHits.incrementAndGet();
+    }
+
+    public void recordCacheMiss() {
+        cacheMisses.incrementAndGet();
+    }
+
+    public long getFetchCount() {
+        return spawn.getCount();
+    }
+
+    public long getAverageSpawnMillis() {
+        return spawn.getAverageMillis();
+    }
+
+    public long getMaxSpawnMillis() {
+        return spawn.getMaxMillis();
+    }
+
+    public long getLastSpawnMillis() {
+        return spawn.getLastMillis();
+    }
+
+    public long getAverageFirstByteMillis() {
+        return firstByte.getAverageMillis();
+    }
+
+    public long getMaxFirstByteMillis() {
+        return firstByte.getMaxMillis();
+    }
+
+    public long getLastFirstByteMillis() {
+        return firstByte.getLastMillis();
+    }
+
+    public long getAverageParseMillis() {
+        return parse.getAverageMillis();
+    }
+
+    public long getMaxParseMillis() {
+        return parse.getMaxMillis();
+    }
+
+    public long getLastParseMillis() {
+        return parse.getLastMillis();
+    }
+
+    public long getAverageFormatMillis() {
+        return format.getAverageMillis();
+    }
+
+    public long getMaxFormatMillis() {
+        return format.getMaxMillis();
+    }
+
+    public long getLastFormatMillis() {
+        return format.getLastMillis();
+    }
+
+    public long getOutputChars() {
+        return outputChars.get();
+    }
+
+    public long getEntriesKept() {
+        return entriesKept.get();
+    }
+
+    public long getEntriesDiscarded() {
+        return entriesDiscarded.get();
+    }
+
+    public long getEntriesFiltered() {
+        return entriesFiltered.get();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+}
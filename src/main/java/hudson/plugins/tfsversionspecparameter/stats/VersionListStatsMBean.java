@@ -0,0 +1,47 @@
+package hudson.plugins.tfsversionspecparameter.stats;
+
+/**
+ * JMX view of the {@link VersionListStats} of a repository. Durations are in milliseconds.
+ */
+public interface VersionListStatsMBean {
+
+    String getRepository();
+
+    long getFetchCount();
+
+    long getAverageSpawnMillis();
+
+    long getMaxSpawnMillis();
+
+    long getLastSpawnMillis();
+
+    long getAverageFirstByteMillis();
+
+    long getMaxFirstByteMillis();
+
+    long getLastFirstByteMillis();
+
+    long getAverageParseMillis();
+
+    long getMaxParseMillis();
+
+    long getLastParseMillis();
+
+    long getAverageFormatMillis();
+
+    long getMaxFormatMillis();
+
+    long getLastFormatMillis();
+
+    long getOutputChars();
+
+    long getEntriesKept();
+
+    long getEntriesDiscarded();
+
+    long getEntriesFiltered();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+}
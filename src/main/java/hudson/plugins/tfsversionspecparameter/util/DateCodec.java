@@ -0,0 +1,267 @@
+package hudson.plugins.tfsversionspecparameter.util;
+
+import java.text.DateFormat;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Parses the dates printed by tf and formats the dates shown in the version
+ * lists. One codec is shared per locale and can be used by any number of
+ * threads; every thread gets its own date formats, created once.
+ * <p>
+ * tf prints dates in the layout of the locale it runs with, which need not be
+ * the locale of Jenkins and can be configured, see {@link #setOutputLocale}.
+ * The codec tries the layouts of its locale and a few common fixed ones. A
+ * {@link Parser} remembers the layout that matched and tries it first from then
+ * on, so only the first date of an output is matched against several layouts;
+ * each output gets its own parser, so outputs of servers with different layouts
+ * do not keep overriding each other's choice.
+ * Formatting remembers the day it last formatted, so the consecutive rows of
+ * a list that fall on the same day reuse the same text.
+ */
+public final class DateCodec {
+
+    private static final ConcurrentMap<Locale, DateCodec> CODECS = new ConcurrentHashMap<Locale, DateCodec>();
+
+    /** Layouts of tf output seen regardless of the locale, tried after the layouts of the locale. */
+    private static final String[] FIXED_PATTERNS = {
+        "dd MMMM yyyy HH:mm:ss",
+        "dd MMM yyyy HH:mm:ss",
+        "EEEE, MMMM d, yyyy h:mm:ss a",
+        "M/d/yyyy h:mm:ss a",
+        "dd.MM.yyyy HH:mm:ss",
+        "dd/MM/yyyy HH:mm:ss",
+        "yyyy-MM-dd HH:mm:ss",
+    };
+
+    /** Locale tf runs with; null for the locale of Jenkins. */
+    private static volatile Locale outputLocale;
+
+    private final Locale locale;
+    private final String[] patterns;
+    private final Locale[] patternLocales;
+
+    private final ThreadLocal<Formats> formats = new ThreadLocal<Formats>() {
+        @Override
+        protected Formats initialValue() {
+            return new Formats();
+        }
+    };
+
+    private DateCodec(Locale locale) {
+        this.locale = locale;
+        List<String> patternList = new ArrayList<String>();
+        List<Locale> localeList = new ArrayList<Locale>();
+        int[] styles = { DateFormat.FULL, DateFormat.LONG, DateFormat.MEDIUM, DateFormat.SHORT };
+        for (int style : styles) {
+            DateFormat format = DateFormat.getDateTimeInstance(style, DateFormat.MEDIUM, locale);
+            if (format instanceof SimpleDateFormat) {
+                addPattern(patternList, localeList, ((SimpleDateFormat) format).toPattern(), locale);
+            }
+        }
+        for (String pattern : FIXED_PATTERNS) {
+            addPattern(patternList, localeList, pattern, locale);
+        }
+        if (!Locale.ENGLISH.getLanguage().equals(locale.getLanguage())) {
+            for (String pattern : FIXED_PATTERNS) {
+                addPattern(patternList, localeList, pattern, Locale.ENGLISH);
+            }
+        }
+        this.patterns = patternList.toArray(new String[patternList.size()]);
+        this.patternLocales = localeList.toArray(new Locale[localeList.size()]);
+    }
+
+    private static void addPattern(List<String> patterns, List<Locale> locales, String pattern, Locale locale) {
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).equals(pattern) && locales.get(i).equals(locale)) {
+                return;
+            }
+        }
+        patterns.add(pattern);
+        locales.add(locale);
+    }
+
+    public static DateCodec forLocale(Locale locale) {
+        DateCodec codec = CODECS.get(locale);
+        if (codec == null) {
+            codec = new DateCodec(locale);
+            DateCodec existing = CODECS.putIfAbsent(locale, codec);
+            if (existing != null) {
+                codec = existing;
+            }
+        }
+        return codec;
+    }
+
+    /**
+     * Returns the codec of the locale Jenkins runs with, used to format dates.
+     */
+    public static DateCodec getDefault() {
+        return forLocale(Locale.getDefault());
+    }
+
+    /**
+     * Returns the codec of the locale tf runs with, used to parse its output.
+     */
+    public static DateCodec forOutput() {
+        Locale locale = outputLocale;
+        return forLocale(locale != null ? locale : Locale.getDefault());
+    }
+
+    /**
+     * @param locale the locale tf runs with; null if it runs with the locale of Jenkins
+     */
+    public static void setOutputLocale(Locale locale) {
+        outputLocale = locale;
+    }
+
+    /**
+     * Parses a locale name such as <tt>de_DE</tt> or <tt>en-US</tt>.
+     * @return the locale; null if the name is empty.
+     */
+    public static Locale toLocale(String name) {
+        if (name == null || name.trim().length() == 0) {
+            return null;
+        }
+        String[] parts = name.trim().split("[_-]", 3);
+        if (parts.length == 1) {
+            return new Locale(parts[0]);
+        }
+        return parts.length == 2 ? new Locale(parts[0], parts[1]) : new Locale(parts[0], parts[1], parts[2]);
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+
+    /**
+     * Returns a parser for the dates of one tf output.
+     */
+    public Parser newParser() {
+        return new Parser();
+    }
+
+    /**
+     * Parses a date printed by tf. Use a {@link Parser} for the dates of a whole output.
+     * @return the time in milliseconds; {@link Long#MIN_VALUE} if the text matches none of the layouts.
+     */
+    public long parseTime(String text) {
+        return newParser().parseTime(text);
+    }
+
+    /**
+     * Parses a date printed by tf. Use a {@link Parser} for the dates of a whole output.
+     * @return the date; null if the text is null or matches none of the layouts.
+     */
+    public Date parse(String text) {
+        return newParser().parse(text);
+    }
+
+    /**
+     * Formats the day of the time in the medium date style of the locale.
+     */
+    public String formatDate(long time) {
+        return formats.get().formatDate(time);
+    }
+
+    /**
+     * Formats the day of the date in the medium date style of the locale.
+     * @return the text; empty if the date is null.
+     */
+    public String formatDate(Date date) {
+        return date == null ? "" : formatDate(date.getTime());
+    }
+
+    /**
+     * Parses the dates of one tf output, trying the layout that matched last first.
+     * A parser is meant to be used by one thread at a time.
+     */
+    public final class Parser {
+        /** Index of the layout that matched last. */
+        private int detected;
+
+        private Parser() {
+        }
+
+        /**
+         * @return the time in milliseconds; {@link Long#MIN_VALUE} if the text matches none of the layouts.
+         */
+        public long parseTime(String text) {
+            String value = text.trim();
+            Formats threadFormats = formats.get();
+            long time = threadFormats.parse(detected, value);
+            if (time != Long.MIN_VALUE) {
+                return time;
+            }
+            for (int i = 0; i < patterns.length; i++) {
+                if (i != detected) {
+                    time = threadFormats.parse(i, value);
+                    if (time != Long.MIN_VALUE) {
+                        detected = i;
+                        return time;
+                    }
+                }
+            }
+            return Long.MIN_VALUE;
+        }
+
+        /**
+         * @return the date; null if the text is null or matches none of the layouts.
+         */
+        public Date parse(String text) {
+            if (text == null) {
+                return null;
+            }
+            long time = parseTime(text);
+            return time == Long.MIN_VALUE ? null : new Date(time);
+        }
+    }
+
+    /**
+     * The date formats of one thread.
+     */
+    private final class Formats {
+        private final SimpleDateFormat[] parsers = new SimpleDateFormat[patterns.length];
+        private final ParsePosition position = new ParsePosition(0);
+        private final DateFormat dateFormat = DateFormat.getDateInstance(DateFormat.MEDIUM, locale);
+        private final Calendar calendar = Calendar.getInstance(locale);
+        private long dayStart = 1;
+        private long dayEnd = 0;
+        private String dayText;
+
+        long parse(int index, String text) {
+            SimpleDateFormat parser = parsers[index];
+            if (parser == null) {
+                parser = new SimpleDateFormat(patterns[index], patternLocales[index]);
+                parser.setLenient(false);
+                parsers[index] = parser;
+            }
+            position.setIndex(0);
+            position.setErrorIndex(-1);
+            Date date = parser.parse(text, position);
+            return date != null && position.getIndex() == text.length() ? date.getTime() : Long.MIN_VALUE;
+        }
+
+        String formatDate(long time) {
+            if (time < dayStart || time >= dayEnd) {
+                calendar.setTimeInMillis(time);
+                calendar.set(Calendar.HOUR_OF_DAY, 0);
+                calendar.set(Calendar.MINUTE, 0);
+                calendar.set(Calendar.SECOND, 0);
+                calendar.set(Calendar.MILLISECOND, 0);
+                dayStart = calendar.getTimeInMillis();
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+                dayEnd = calendar.getTimeInMillis();
+                dayText = dateFormat.format(new Date(time));
+            }
+            return dayText;
+        }
+    }
+}
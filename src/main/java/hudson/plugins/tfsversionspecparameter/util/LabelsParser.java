@@ -1,18 +1,8 @@
 package hudson.plugins.tfsversionspecparameter.util;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Parser for the detailed labels output from the TF tool.
@@ -33,27 +23,70 @@ import java.util.regex.Pattern;
  * 
  * 
  * </pre>
-
+ * <p>
+ * The output is read line by line into a reused buffer. When a path is given,
+ * labels whose scope neither contains the path nor lies below it are skipped right after their scope line without
+ * creating any strings, and the changeset item rows are never turned into
+ * strings at all; only the changeset number at their start is read, to
+ * resolve the label to the highest changeset it contains. Dates are parsed by a parser of a {@link DateCodec},
+ * which detects the locale specific layout from the first label of this output; a date equal to
+ * the one of the previous label is not parsed again.
+ *
  * @author Erik Ramfelt
  */
 public class LabelsParser {
 
-    private static final Pattern LABEL_PATTERN    = Pattern.compile("Label  : ");
-    private static final Pattern SCOPE_PATTERN    = Pattern.compile("Scope  : ");
-    private static final Pattern OWNER_PATTERN    = Pattern.compile("Owner  : ");
-    private static final Pattern DATE_PATTERN     = Pattern.compile("Date   : ");
-    private static final Pattern COMMENT_PATTERN  = Pattern.compile("Comment: ");
-    private final BufferedReader reader;
-    
-    private String currentLine;
+    private static final char[] LABEL_PREFIX    = "Label  : ".toCharArray();
+    private static final char[] SCOPE_PREFIX    = "Scope  : ".toCharArray();
+    private static final char[] OWNER_PREFIX    = "Owner  : ".toCharArray();
+    private static final char[] DATE_PREFIX     = "Date   : ".toCharArray();
+    private static final char[] COMMENT_PREFIX  = "Comment: ".toCharArray();
+
+    private final Reader reader;
+    private final char[] scopeFilter;
+    private final DateCodec.Parser dateParser;
+
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private char[] line = new char[256];
+    private int lineLength;
+    private char[] labelChars = new char[64];
+    private char[] lastDateChars = new char[32];
+    private int lastDateLength = -1;
+    private long lastDateTime;
+    private int discarded;
+    /** True if the current line was read ahead and belongs to the next label. */
+    private boolean pushedBack;
+
     private String label;
     private String comment;
     private String projectScope;
     private String owner;
     private Date date;
+    private int changeset;
     
     public LabelsParser(Reader reader) throws IOException {
-        this.reader = new BufferedReader( reader );
+        this(reader, null);
+    }
+
+    /**
+     * @param reader the output of tf labels
+     * @param path the server path to return labels for, compared ignoring case; null for all labels
+     */
+    public LabelsParser(Reader reader, String path) throws IOException {
+        this(reader, path, DateCodec.forOutput());
+    }
+
+    /**
+     * @param reader the output of tf labels
+     * @param path the server path to return labels for, compared ignoring case; null for all labels
+     * @param dateCodec the codec for the dates in the locale tf runs with
+     */
+    public LabelsParser(Reader reader, String path, DateCodec dateCodec) throws IOException {
+        this.reader = reader;
+        this.scopeFilter = path == null ? null : trimSlash(path.trim()).toCharArray();
+        this.dateParser = dateCodec.newParser();
     }
     
     /**
@@ -62,52 +95,205 @@ public class LabelsParser {
      * @throws IOException
      */
     public boolean nextLabel() throws IOException {
-        boolean bFound = false;
-        do {
-            currentLine = reader.readLine();
-            if (currentLine != null)
-            {
-                Matcher matcher = LABEL_PATTERN.matcher(currentLine);
-                if (matcher.find())
-                {
-                    bFound = true;                
-                    label = currentLine.substring(matcher.end());
-
-                    //Scope
-                    currentLine = reader.readLine();
-                    matcher = SCOPE_PATTERN.matcher(currentLine);
-                    if(matcher.find()){
-                        projectScope = currentLine.substring(matcher.end());
-                    }
-
-                    //Owner
-                    currentLine = reader.readLine();
-                    matcher = OWNER_PATTERN.matcher(currentLine);
-                    if(matcher.find()){
-                        owner = currentLine.substring(matcher.end());
-                    }
-
-                    //Date
-                    currentLine = reader.readLine();
-                    matcher = DATE_PATTERN.matcher(currentLine);
-                    if(matcher.find()){
-                        try {
-                            date = new SimpleDateFormat("dd MMM yyyy HH:mm:ss").parse(currentLine.substring(matcher.end()));
-                        } catch (ParseException ex) {
-                            date = null;
-                        }
-                    }
-
-                    //Comment
-                    currentLine = reader.readLine();
-                    matcher = COMMENT_PATTERN.matcher(currentLine);
-                    if(matcher.find()){
-                        comment = currentLine.substring(matcher.end());
-                    }
+        while (nextLine()) {
+            int labelStart = valueStart(LABEL_PREFIX);
+            if (labelStart < 0) {
+                continue;
+            }
+            int labelLength = lineLength - labelStart;
+            if (labelChars.length < labelLength) {
+                labelChars = new char[labelLength];
+            }
+            System.arraycopy(line, labelStart, labelChars, 0, labelLength);
+
+            //Scope
+            if (!readLine()) {
+                return false;
+            }
+            int scopeStart = valueStart(SCOPE_PREFIX);
+            if (scopeFilter != null && (scopeStart < 0 || !scopeMatches(scopeStart))) {
+                discarded++;
+                continue;
+            }
+            label = new String(labelChars, 0, labelLength);
+            projectScope = value(scopeStart);
+
+            //Owner
+            owner = readLine() ? value(valueStart(OWNER_PREFIX)) : null;
+
+            //Date
+            date = readLine() ? parseDate(valueStart(DATE_PREFIX)) : null;
+
+            //Comment
+            comment = readLine() ? value(valueStart(COMMENT_PREFIX)) : null;
+
+            //Items
+            changeset = readItems();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean nextLine() throws IOException {
+        if (pushedBack) {
+            pushedBack = false;
+            return true;
+        }
+        return readLine();
+    }
+
+    /**
+     * Reads the item rows of the current label up to the separator line.
+     * @return the highest changeset of the items; 0 if there are none.
+     */
+    private int readItems() throws IOException {
+        int highest = 0;
+        while (readLine()) {
+            int start = 0;
+            while (start < lineLength && line[start] == ' ') {
+                start++;
+            }
+            if (start < lineLength && line[start] == '=') {
+                break;
+            }
+            if (valueStart(LABEL_PREFIX) >= 0) {
+                pushedBack = true;
+                break;
+            }
+            int number = 0;
+            int end = start;
+            while (end < lineLength && end - start < 10 && line[end] >= '0' && line[end] <= '9') {
+                number = number * 10 + (line[end++] - '0');
+            }
+            if (end > start && (end == lineLength || line[end] == ' ') && number > highest) {
+                highest = number;
+            }
+        }
+        return highest;
+    }
+
+    /**
+     * Parses the date in the current line, reusing the time of the previous label
+     * if the date is the same.
+     */
+    private Date parseDate(int start) {
+        if (start < 0) {
+            return null;
+        }
+        int length = lineLength - start;
+        if (!sameAsLastDate(start, length)) {
+            lastDateTime = dateParser.parseTime(new String(line, start, length));
+            if (lastDateChars.length < length) {
+                lastDateChars = new char[length];
+            }
+            System.arraycopy(line, start, lastDateChars, 0, length);
+            lastDateLength = length;
+        }
+        return lastDateTime == Long.MIN_VALUE ? null : new Date(lastDateTime);
+    }
+
+    private boolean sameAsLastDate(int start, int length) {
+        if (length != lastDateLength) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line[start + i] != lastDateChars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next line into the line buffer, without the line terminator.
+     * @return false if the end of the output was reached.
+     */
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        boolean read = false;
+        while (true) {
+            if (position >= limit) {
+                limit = reader.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return read;
+                }
+            }
+            read = true;
+            char c = buffer[position++];
+            if (c == '\n') {
+                return true;
+            }
+            if (c != '\r') {
+                if (lineLength == line.length) {
+                    char[] larger = new char[line.length * 2];
+                    System.arraycopy(line, 0, larger, 0, lineLength);
+                    line = larger;
                 }
+                line[lineLength++] = c;
             }
-        } while (currentLine != null && !bFound);
-        return bFound;
+        }
+    }
+
+    /**
+     * Returns the index in the current line of the value following the prefix.
+     * @return the index; -1 if the line does not start with the prefix.
+     */
+    private int valueStart(char[] prefix) {
+        int start = 0;
+        while (start < lineLength && line[start] == ' ') {
+            start++;
+        }
+        if (lineLength - start < prefix.length) {
+            return -1;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (line[start + i] != prefix[i]) {
+                return -1;
+            }
+        }
+        return start + prefix.length;
+    }
+
+    /**
+     * Returns true if the scope in the current line is the filtered path, contains it
+     * or lies below it, ignoring case.
+     */
+    private boolean scopeMatches(int start) {
+        int length = lineLength - start;
+        if (length > 2 && line[start + length - 1] == '/') {
+            length--;
+        }
+        int common = Math.min(length, scopeFilter.length);
+        for (int i = 0; i < common; i++) {
+            char c = line[start + i];
+            if (c != scopeFilter[i] && Character.toLowerCase(c) != Character.toLowerCase(scopeFilter[i])) {
+                return false;
+            }
+        }
+        if (length == scopeFilter.length) {
+            return true;
+        }
+        if (length < scopeFilter.length) {
+            return scopeFilter[length] == '/' || line[start + length - 1] == '/';
+        }
+        return line[start + scopeFilter.length] == '/' || scopeFilter[scopeFilter.length - 1] == '/';
+    }
+
+    private static String trimSlash(String path) {
+        return path.length() > 2 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    private String value(int start) {
+        return start < 0 ? null : new String(line, start, lineLength - start);
+    }
+    
+    /**
+     * @return the number of labels skipped because their scope did not match.
+     */
+    public int getDiscardedCount() {
+        return discarded;
     }
     
     public String getProjectScope() {
@@ -125,4 +311,10 @@ public class LabelsParser {
     public String getOwner() {
         return owner;
     }    
+    /**
+     * @return the highest changeset of the items of the label; 0 if it has none.
+     */
+    public int getChangeset() {
+        return changeset;
+    }    
 }
@@ -0,0 +1,53 @@
+package hudson.plugins.tfsversionspecparameter.util;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Output stream that keeps only the last bytes written to it, so the output
+ * of a failed command can be shown without buffering everything it wrote.
+ */
+public final class OutputTail extends OutputStream {
+
+    private final byte[] buffer;
+    private long written;
+
+    /**
+     * @param capacity the number of bytes kept
+     */
+    public OutputTail(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        buffer[(int) (written++ % buffer.length)] = (byte) b;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        for (int i = 0; i < len; i++) {
+            buffer[(int) (written++ % buffer.length)] = b[off + i];
+        }
+    }
+
+    /**
+     * @return the position to pass to {@link #since(long)} to get what is written from now on.
+     */
+    public synchronized long mark() {
+        return written;
+    }
+
+    /**
+     * Returns what was written after the mark, or its last bytes if more than the capacity was written.
+     */
+    public synchronized String since(long mark) {
+        long from = Math.max(mark, written - buffer.length);
+        int length = (int) (written - from);
+        byte[] tail = new byte[length];
+        for (int i = 0; i < length; i++) {
+            tail[i] = buffer[(int) ((from + i) % buffer.length)];
+        }
+        return new String(tail, Charset.defaultCharset());
+    }
+}
@@ -0,0 +1,257 @@
+package hudson.plugins.tfsversionspecparameter.util;
+
+import hudson.plugins.tfsversionspecparameter.model.ChangeSetHistory;
+import hudson.plugins.tfsversionspecparameter.model.TFSLabel;
+import hudson.plugins.tfsversionspecparameter.model.VersionListRows;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the rows shown in the parameter select box, mapping the value of
+ * each changeset or label to its display text. The text of a row is only
+ * formatted when the row is rendered.
+ */
+public class VersionListFormatter {
+
+    private VersionListFormatter() {
+    }
+
+    /**
+     * Returns the changesets of the history as rows whose value is the changeset number.
+     */
+    public static VersionListRows changeSetRows(ChangeSetHistory history) {
+        return new ChangeSetRows(history, "", "");
+    }
+
+    /**
+     * Returns the labels as rows whose value is the label name followed by @ and its scope,
+     * which tells labels of the same name in different scopes apart.
+     */
+    public static VersionListRows labelRows(List<TFSLabel> labels) {
+        return new LabelRows(labels, "", "");
+    }
+
+    /**
+     * Returns the labels and changesets as one list of rows, newest first. Values are
+     * version specs, L followed by the label name and scope or C followed by the changeset number.
+     */
+    public static VersionListRows labelAndChangeSetRows(List<TFSLabel> labels, ChangeSetHistory history) {
+        List<TFSLabel> sortedLabels = new ArrayList<TFSLabel>(labels);
+        Collections.sort(sortedLabels, NEWEST_LABEL_FIRST);
+        return new MergedRows(new LabelRows(sortedLabels, "L", "Label "), new ChangeSetRows(history, "C", "Changeset "), sortedLabels, history);
+    }
+
+    private static String format(Date date) {
+        return DateCodec.getDefault().formatDate(date);
+    }
+
+    private static String format(long time) {
+        return time == Long.MIN_VALUE ? "" : DateCodec.getDefault().formatDate(time);
+    }
+
+    private static final Comparator<TFSLabel> NEWEST_LABEL_FIRST = new Comparator<TFSLabel>() {
+        public int compare(TFSLabel a, TFSLabel b) {
+            if (a.getDate() == null || b.getDate() == null) {
+                return a.getDate() == null ? (b.getDate() == null ? 0 : 1) : -1;
+            }
+            return b.getDate().compareTo(a.getDate());
+        }
+    };
+
+    private static final class ChangeSetRows implements VersionListRows {
+        private final ChangeSetHistory history;
+        private final String valuePrefix;
+        private final String textPrefix;
+
+        ChangeSetRows(ChangeSetHistory history, String valuePrefix, String textPrefix) {
+            this.history = history;
+            this.valuePrefix = valuePrefix;
+            this.textPrefix = textPrefix;
+        }
+
+        public int size() {
+            return history.size();
+        }
+
+        public String getValue(int row) {
+            return valuePrefix + history.getId(row);
+        }
+
+        public String getText(int row) {
+            return textPrefix + history.getId(row) + " - " + format(history.getTime(row)) + " - " + history.getMessage(row);
+        }
+
+        public String getComment(int row) {
+            return history.getMessage(row);
+        }
+
+        public String getOwner(int row) {
+            return history.getUser(row);
+        }
+
+        public int getChangeset(int row) {
+            return history.getId(row);
+        }
+
+        public long getTime(int row) {
+            return history.getTime(row);
+        }
+
+        public int indexOf(String value) {
+            if (!value.startsWith(valuePrefix)) {
+                return -1;
+            }
+            try {
+                return history.indexOf(Integer.parseInt(value.substring(valuePrefix.length())));
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+        }
+    }
+
+    private static final class LabelRows implements VersionListRows {
+        private final List<TFSLabel> labels;
+        /** Row of each label by lower case name and scope, and of the newest label by lower case name alone. */
+        private final Map<String, Integer> rows = new HashMap<String, Integer>();
+        private final String valuePrefix;
+        private final String textPrefix;
+
+        LabelRows(List<TFSLabel> labels, String valuePrefix, String textPrefix) {
+            this.labels = labels;
+            this.valuePrefix = valuePrefix;
+            this.textPrefix = textPrefix;
+            for (int i = labels.size() - 1; i >= 0; i--) {
+                TFSLabel label = labels.get(i);
+                rows.put(label.getLabel().toLowerCase(), i);
+                rows.put(toVersionSpec(label).toLowerCase(), i);
+            }
+        }
+
+        /**
+         * Returns the name of the label followed by @ and its scope, as tf accepts it
+         * in a version spec; only the name if the scope is unknown.
+         */
+        private static String toVersionSpec(TFSLabel label) {
+            String scope = label.getProjectScope();
+            return scope == null || scope.length() == 0 ? label.getLabel() : label.getLabel() + "@" + scope;
+        }
+
+        public int size() {
+            return labels.size();
+        }
+
+        public String getValue(int row) {
+            return valuePrefix + toVersionSpec(labels.get(row));
+        }
+
+        public String getText(int row) {
+            TFSLabel lbl = labels.get(row);
+            return textPrefix + toVersionSpec(lbl) + " - " + format(lbl.getDate()) + " - " + lbl.getComment();
+        }
+
+        public String getComment(int row) {
+            return labels.get(row).getComment();
+        }
+
+        public String getOwner(int row) {
+            return labels.get(row).getOwner();
+        }
+
+        public int getChangeset(int row) {
+            return labels.get(row).getChangeset();
+        }
+
+        public long getTime(int row) {
+            Date date = labels.get(row).getDate();
+            return date == null ? Long.MIN_VALUE : date.getTime();
+        }
+
+        /**
+         * Also finds a label by its name alone, as values were before the scope was added,
+         * returning the newest label of that name.
+         */
+        public int indexOf(String value) {
+            if (!value.startsWith(valuePrefix)) {
+                return -1;
+            }
+            Integer row = rows.get(value.substring(valuePrefix.length()).toLowerCase());
+            return row == null ? -1 : row;
+        }
+    }
+
+    /**
+     * Interleaves label and changeset rows by date.
+     */
+    private static final class MergedRows implements VersionListRows {
+        private final VersionListRows labels;
+        private final VersionListRows changesets;
+        /** Row of the label, or the complement of the row of the changeset, at each position. */
+        private final int[] order;
+        private final int[] labelPositions;
+        private final int[] changesetPositions;
+
+        MergedRows(VersionListRows labels, VersionListRows changesets, List<TFSLabel> sortedLabels, ChangeSetHistory history) {
+            this.labels = labels;
+            this.changesets = changesets;
+            order = new int[labels.size() + changesets.size()];
+            labelPositions = new int[labels.size()];
+            changesetPositions = new int[changesets.size()];
+            int l = 0;
+            int c = 0;
+            for (int i = 0; i < order.length; i++) {
+                Date labelDate = l < sortedLabels.size() ? sortedLabels.get(l).getDate() : null;
+                boolean label = c >= history.size()
+                        || (l < sortedLabels.size() && labelDate != null && labelDate.getTime() >= history.getTime(c));
+                if (label) {
+                    labelPositions[l] = i;
+                    order[i] = l++;
+                } else {
+                    changesetPositions[c] = i;
+                    order[i] = ~c++;
+                }
+            }
+        }
+
+        public int size() {
+            return order.length;
+        }
+
+        public String getValue(int row) {
+            return order[row] >= 0 ? labels.getValue(order[row]) : changesets.getValue(~order[row]);
+        }
+
+        public String getText(int row) {
+            return order[row] >= 0 ? labels.getText(order[row]) : changesets.getText(~order[row]);
+        }
+
+        public String getComment(int row) {
+            return order[row] >= 0 ? labels.getComment(order[row]) : changesets.getComment(~order[row]);
+        }
+
+        public String getOwner(int row) {
+            return order[row] >= 0 ? labels.getOwner(order[row]) : changesets.getOwner(~order[row]);
+        }
+
+        public int getChangeset(int row) {
+            return order[row] >= 0 ? labels.getChangeset(order[row]) : changesets.getChangeset(~order[row]);
+        }
+
+        public long getTime(int row) {
+            return order[row] >= 0 ? labels.getTime(order[row]) : changesets.getTime(~order[row]);
+        }
+
+        public int indexOf(String value) {
+            int row = labels.indexOf(value);
+            if (row >= 0) {
+                return labelPositions[row];
+            }
+            row = changesets.indexOf(value);
+            return row >= 0 ? changesetPositions[row] : -1;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Loads further pages of a TFS VersionSpec parameter list into its select box
+ * when the user scrolls to the bottom of it.
+ */
+function tfsVersionSpecPager(selectId, pageUrl, offset, more) {
+    var select = document.getElementById(selectId);
+    var loading = false;
+    if (select == null) {
+        return;
+    }
+    select.onscroll = function() {
+        if (!more || loading || select.tfsSearching || select.scrollTop + select.clientHeight < select.scrollHeight - 20) {
+            return;
+        }
+        loading = true;
+        var xhr = new XMLHttpRequest();
+        xhr.open("GET", pageUrl + "&offset=" + offset, true);
+        xhr.onreadystatechange = function() {
+            if (xhr.readyState != 4) {
+                return;
+            }
+            loading = false;
+            if (xhr.status != 200) {
+                more = false;
+                return;
+            }
+            var page = JSON.parse(xhr.responseText);
+            for (var i = 0; i < page.items.length; i++) {
+                var option = document.createElement("option");
+                option.value = page.items[i].value;
+                option.text = page.items[i].text;
+                select.appendChild(option);
+            }
+            offset += page.items.length;
+            more = page.more;
+        };
+        xhr.send(null);
+    };
+}
+
+/*
+ * Replaces the entries of a TFS VersionSpec parameter select box with the
+ * matches of the text typed into its search field. Clearing the field
+ * restores the original entries.
+ */
+function tfsVersionSpecSearch(selectId, inputId, searchUrl) {
+    var select = document.getElementById(selectId);
+    var input = document.getElementById(inputId);
+    var original = null;
+    var timer = null;
+    var request = null;
+    if (select == null || input == null) {
+        return;
+    }
+    var show = function(options) {
+        while (select.options.length > 0) {
+            select.remove(0);
+        }
+        for (var i = 0; i < options.length; i++) {
+            select.appendChild(options[i]);
+        }
+    };
+    var search = function() {
+        var query = input.value.replace(/^\s+|\s+$/g, "");
+        if (request != null) {
+            request.abort();
+            request = null;
+        }
+        if (query == "") {
+            if (original != null) {
+                show(original);
+                original = null;
+                select.tfsSearching = false;
+            }
+            return;
+        }
+        if (original == null) {
+            select.tfsSearching = true;
+            original = [];
+            for (var i = 0; i < select.options.length; i++) {
+                original.push(select.options[i]);
+            }
+        }
+        var xhr = new XMLHttpRequest();
+        request = xhr;
+        xhr.open("GET", searchUrl + "&q=" + encodeURIComponent(query), true);
+        xhr.onreadystatechange = function() {
+            if (xhr.readyState != 4 || request != xhr) {
+                return;
+            }
+            request = null;
+            if (xhr.status != 200) {
+                return;
+            }
+            var result = JSON.parse(xhr.responseText);
+            var options = [];
+            for (var i = 0; i < result.items.length; i++) {
+                var option = document.createElement("option");
+                option.value = result.items[i].value;
+                option.text = result.items[i].text;
+                options.push(option);
+            }
+            show(options);
+        };
+        xhr.send(null);
+    };
+    input.onkeyup = function() {
+        if (timer != null) {
+            clearTimeout(timer);
+        }
+        timer = setTimeout(search, 150);
+    };
+}
+
+/*
+ * Drops the cached lists of a TFS VersionSpec parameter with a POST request,
+ * then reloads the page so the lists are retrieved in full.
+ */
+function tfsVersionSpecRefresh(refreshUrl, crumbField, crumb) {
+    var xhr = new XMLHttpRequest();
+    xhr.open("POST", refreshUrl, true);
+    if (crumbField != "" && crumb != "") {
+        xhr.setRequestHeader(crumbField, crumb);
+    }
+    xhr.onreadystatechange = function() {
+        if (xhr.readyState == 4 && xhr.status == 200) {
+            window.location.reload();
+        }
+    };
+    xhr.send(null);
+    return false;
+}
@@ -0,0 +1,106 @@
+package hudson.plugins.tfsversionspecparameter;
+
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.WebRequestSettings;
+import hudson.plugins.tfsversionspecparameter.cache.VersionListCache;
+import hudson.plugins.tfsversionspecparameter.cache.VersionListKey;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+/**
+ * Posts notifications to a running Jenkins and checks that only the cached lists
+ * of the changed paths are marked dirty.
+ */
+public class TFSVersionSpecWebhookTest extends HudsonTestCase {
+
+    private static final String SERVER = "http://tfs:8080/tfs/DefaultCollection";
+    private static final String TOKEN = "s3cret";
+
+    private final VersionListKey mainHistory = new VersionListKey(SERVER, "$/Product/Main", "builder",
+            TFSVersionSpecParameterDefinition.PARAMETER_TYPE_CHANGESET);
+    private final VersionListKey mainLabels = new VersionListKey(SERVER, "$/Product/Main", "builder",
+            TFSVersionSpecParameterDefinition.PARAMETER_TYPE_LABEL);
+    private final VersionListKey releaseHistory = new VersionListKey(SERVER, "$/Product/Release", "builder",
+            TFSVersionSpecParameterDefinition.PARAMETER_TYPE_CHANGESET);
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TFSVersionSpecParameterDefinition.DescriptorImpl descriptor =
+                hudson.getDescriptorByType(TFSVersionSpecParameterDefinition.DescriptorImpl.class);
+        descriptor.setWebhookEnabled(true);
+        descriptor.setWebhookToken(TOKEN);
+
+        VersionListCache cache = VersionListCache.getInstance();
+        cache.clear();
+        for (VersionListKey key : new VersionListKey[] { mainHistory, mainLabels, releaseHistory }) {
+            cache.get(key, new VersionListCache.Loader<List<String>>() {
+                public List<String> load(List<String> previous) {
+                    return Collections.emptyList();
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        VersionListCache.getInstance().clear();
+        super.tearDown();
+    }
+
+    public void testCheckinPayloadMarksTheChangedPaths() throws Exception {
+        String payload = "{\"eventType\":\"tfvc.checkin\",\"resource\":{\"changesetId\":18,"
+                + "\"url\":\"" + SERVER + "/_apis/tfvc/changesets/18\","
+                + "\"changes\":[{\"item\":{\"path\":\"$/Product/Main/src/App.java\"},\"changeType\":\"edit\"}]}}";
+
+        Page page = post("", payload, TOKEN);
+
+        assertEquals(202, page.getWebResponse().getStatusCode());
+        VersionListCache cache = VersionListCache.getInstance();
+        assertTrue(cache.isDirty(mainHistory));
+        assertFalse(cache.isDirty(mainLabels));
+        assertFalse(cache.isDirty(releaseHistory));
+    }
+
+    public void testQueryParameterNotificationMarksThePath() throws Exception {
+        Page page = post("?server=" + SERVER + "&path=$/Product/Release&event=checkin", null, TOKEN);
+
+        assertEquals(202, page.getWebResponse().getStatusCode());
+        VersionListCache cache = VersionListCache.getInstance();
+        assertTrue(cache.isDirty(releaseHistory));
+        assertFalse(cache.isDirty(mainHistory));
+        assertFalse(cache.isDirty(mainLabels));
+    }
+
+    public void testTokenIsOnlyAcceptedAsHeader() throws Exception {
+        Page page = post("?token=" + TOKEN + "&path=$/Product/Main", null, null);
+
+        assertEquals(403, page.getWebResponse().getStatusCode());
+        assertFalse(VersionListCache.getInstance().isDirty(mainHistory));
+    }
+
+    public void testWrongTokenIsRejected() throws Exception {
+        Page page = post("?path=$/Product/Main", null, "wrong");
+
+        assertEquals(403, page.getWebResponse().getStatusCode());
+        assertFalse(VersionListCache.getInstance().isDirty(mainHistory));
+    }
+
+    private Page post(String query, String json, String token) throws Exception {
+        WebClient client = createWebClient();
+        client.setThrowExceptionOnFailingStatusCode(false);
+        WebRequestSettings request = new WebRequestSettings(
+                new URL(getURL(), TFSVersionSpecWebhook.URL_NAME + "/" + query), HttpMethod.POST);
+        if (token != null) {
+            request.setAdditionalHeader(TFSVersionSpecWebhook.TOKEN_HEADER, token);
+        }
+        if (json != null) {
+            request.setAdditionalHeader("Content-Type", "application/json");
+            request.setRequestBody(json);
+        }
+        return client.getPage(request);
+    }
+}
@@ -0,0 +1,266 @@
+package hudson.plugins.tfsversionspecparameter.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import hudson.plugins.tfs.model.ChangeSet;
+import hudson.plugins.tfs.model.Server;
+import hudson.plugins.tfsversionspecparameter.model.TFSLabel;
+import hudson.plugins.tfsversionspecparameter.model.VersionListFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs the REST backend against an embedded HTTP server that answers with canned
+ * TFVC REST responses.
+ */
+public class RestBackendTest {
+
+    private HttpServer httpServer;
+    private String collectionUrl;
+    private final Queue<Response> responses = new LinkedList<Response>();
+    private final List<Request> requests = new ArrayList<Request>();
+
+    @Before
+    public void startServer() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpServer.createContext("/tfs/DefaultCollection/_apis/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                Response response;
+                synchronized (responses) {
+                    requests.add(new Request(exchange.getRequestURI().getPath(), exchange.getRequestURI().getRawQuery(),
+                            exchange.getRequestHeaders().getFirst("Authorization")));
+                    response = responses.isEmpty() ? new Response(404, "") : responses.remove();
+                }
+                byte[] body = response.body.getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(response.status, body.length == 0 ? -1 : body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        httpServer.start();
+        collectionUrl = "http://127.0.0.1:" + httpServer.getAddress().getPort() + "/tfs/DefaultCollection";
+    }
+
+    @After
+    public void stopServer() {
+        httpServer.stop(0);
+    }
+
+    @Test
+    public void parsesChangesets() throws Exception {
+        respond(200, "{\"count\":2,\"value\":["
+                + "{\"changesetId\":18,\"author\":{\"displayName\":\"Jane Doe\",\"uniqueName\":\"DOMAIN\\\\jane\"},"
+                + "\"createdDate\":\"2014-03-05T10:15:30.123Z\",\"comment\":\"Fix the build\"},"
+                + "{\"changesetId\":17,\"author\":{\"displayName\":\"John Doe\"},"
+                + "\"createdDate\":\"2014-03-04T08:00:00Z\"}]}");
+
+        List<ChangeSet> changesets = new RestBackend().getChangeSets(server(null, null), "$/Product/Main", 0, 0, VersionListFilter.NONE);
+
+        assertEquals(2, changesets.size());
+        assertEquals("18", changesets.get(0).getVersion());
+        assertEquals("DOMAIN\\jane", changesets.get(0).getUser());
+        assertEquals("Fix the build", changesets.get(0).getComment());
+        assertEquals(1394014530123L, changesets.get(0).getDate().getTime());
+        assertEquals("17", changesets.get(1).getVersion());
+        assertEquals("John Doe", changesets.get(1).getUser());
+        assertEquals("", changesets.get(1).getComment());
+
+        Request request = requests.get(0);
+        assertEquals("/tfs/DefaultCollection/_apis/tfvc/changesets", request.path);
+        assertTrue(request.query, request.query.contains("searchCriteria.itemPath=%24%2FProduct%2FMain"));
+        assertTrue(request.query, request.query.contains("api-version=1.0"));
+    }
+
+    @Test
+    public void parsesLabels() throws Exception {
+        respond(200, "{\"count\":1,\"value\":["
+                + "{\"name\":\"Release-1.0\",\"labelScope\":\"$/Product/Main\",\"description\":\"First release\","
+                + "\"modifiedDate\":\"2014-03-05T10:15:30Z\",\"owner\":{\"uniqueName\":\"DOMAIN\\\\jane\"}},"
+                + "{\"name\":\"Nightly\",\"labelScope\":\"$/Product/Main\",\"modifiedDate\":\"not a date\"}]}");
+
+        List<TFSLabel> labels = new RestBackend().getLabels(server(null, null), "$/Product/Main", 0, VersionListFilter.NONE);
+
+        assertEquals(2, labels.size());
+        assertEquals("Release-1.0", labels.get(0).getLabel());
+        assertEquals("$/Product/Main", labels.get(0).getProjectScope());
+        assertEquals("DOMAIN\\jane", labels.get(0).getOwner());
+        assertEquals("First release", labels.get(0).getComment());
+        assertEquals(1394014530000L, labels.get(0).getDate().getTime());
+        assertEquals("", labels.get(1).getOwner());
+        assertNull(labels.get(1).getDate());
+        assertEquals("/tfs/DefaultCollection/_apis/tfvc/labels", requests.get(0).path);
+    }
+
+    @Test
+    public void pagesUntilAShortPage() throws Exception {
+        respond(200, changesets(1000, 1000));
+        respond(200, changesets(2, 0));
+
+        List<ChangeSet> changesets = new RestBackend().getChangeSets(server(null, null), "$/Product", 0, 0, VersionListFilter.NONE);
+
+        assertEquals(1002, changesets.size());
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(0).query, requests.get(0).query.contains("$top=1000&$skip=0"));
+        assertTrue(requests.get(1).query, requests.get(1).query.contains("$top=1000&$skip=1000"));
+    }
+
+    @Test
+    public void requestsNoMoreThanMaxItems() throws Exception {
+        respond(200, changesets(5, 100));
+
+        List<ChangeSet> changesets = new RestBackend().getChangeSets(server(null, null), "$/Product", 0, 5, VersionListFilter.NONE);
+
+        assertEquals(5, changesets.size());
+        assertEquals(1, requests.size());
+        assertTrue(requests.get(0).query, requests.get(0).query.contains("$top=5&$skip=0"));
+    }
+
+    @Test
+    public void requestsOnlyNewChangesets() throws Exception {
+        respond(200, changesets(1, 120));
+
+        new RestBackend().getChangeSets(server(null, null), "$/Product", 120, 0, VersionListFilter.NONE);
+
+        assertTrue(requests.get(0).query, requests.get(0).query.contains("searchCriteria.fromId=120"));
+    }
+
+    @Test
+    public void sendsBasicAuthorization() throws Exception {
+        respond(200, "{\"count\":0,\"value\":[]}");
+
+        new RestBackend().getLabels(server("DOMAIN\\builder", "s3cret"), "$/Product", 0, VersionListFilter.NONE);
+
+        String expected = "Basic " + new String(Base64.encodeBase64("DOMAIN\\builder:s3cret".getBytes("UTF-8")), "US-ASCII");
+        assertEquals(expected, requests.get(0).authorization);
+    }
+
+    @Test
+    public void sendsNoAuthorizationWithoutUser() throws Exception {
+        respond(200, "{\"count\":0,\"value\":[]}");
+
+        new RestBackend().getLabels(server(null, null), "$/Product", 0, VersionListFilter.NONE);
+
+        assertNull(requests.get(0).authorization);
+    }
+
+    @Test
+    public void failsOnErrorStatus() throws Exception {
+        respond(401, "{\"message\":\"Unauthorized\"}");
+        try {
+            new RestBackend().getChangeSets(server(null, null), "$/Product", 0, 0, VersionListFilter.NONE);
+            fail("expected an IOException");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("401"));
+        }
+    }
+
+    @Test
+    public void fallsBackOnErrorStatus() throws Exception {
+        respond(404, "");
+        RecordingBackend commandLine = new RecordingBackend();
+
+        List<ChangeSet> changesets = new FallbackBackend(new RestBackend(), commandLine)
+                .getChangeSets(server(null, null), "$/Product", 0, 0, VersionListFilter.NONE);
+
+        assertSame(commandLine.changesets, changesets);
+        assertEquals(1, commandLine.calls);
+    }
+
+    @Test
+    public void fallsBackWhenTheServerIsUnreachable() throws Exception {
+        Server server = server(null, null);
+        httpServer.stop(0);
+        RecordingBackend commandLine = new RecordingBackend();
+
+        List<TFSLabel> labels = new FallbackBackend(new RestBackend(), commandLine)
+                .getLabels(server, "$/Product", 0, VersionListFilter.NONE);
+
+        assertSame(commandLine.labels, labels);
+        assertEquals(1, commandLine.calls);
+    }
+
+    private Server server(String userName, String password) {
+        return new Server(null, collectionUrl, userName, password);
+    }
+
+    private void respond(int status, String body) {
+        synchronized (responses) {
+            responses.add(new Response(status, body));
+        }
+    }
+
+    /**
+     * Returns a page of changesets with descending ids, starting at the id.
+     */
+    private static String changesets(int count, int firstId) {
+        StringBuilder json = new StringBuilder("{\"count\":").append(count).append(",\"value\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"changesetId\":").append(firstId - i)
+                    .append(",\"author\":{\"uniqueName\":\"DOMAIN\\\\jane\"},\"createdDate\":\"2014-03-05T10:15:30Z\",\"comment\":\"\"}");
+        }
+        return json.append("]}").toString();
+    }
+
+    private static final class Request {
+        final String path;
+        final String query;
+        final String authorization;
+
+        Request(String path, String query, String authorization) {
+            this.path = path;
+            this.query = query;
+            this.authorization = authorization;
+        }
+    }
+
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Stands in for the tf command line client.
+     */
+    private static final class RecordingBackend implements VersionListBackend {
+        final List<ChangeSet> changesets = Collections.singletonList(new ChangeSet("1", null, "jane", ""));
+        final List<TFSLabel> labels = Collections.singletonList(new TFSLabel("Nightly", "$/Product", null, "jane", ""));
+        int calls;
+
+        public List<ChangeSet> getChangeSets(Server server, String projectPath, int fromChangeset, int maxItems, VersionListFilter filter) {
+            calls++;
+            return changesets;
+        }
+
+        public List<TFSLabel> getLabels(Server server, String projectPath, int maxItems, VersionListFilter filter) {
+            calls++;
+            return labels;
+        }
+    }
+}